@@ -107,9 +107,10 @@ def get_ipv6_address(interface: str) -> Optional[str]:
         return None
 
 
-def report_ip(server_url: str, api_token: str, ip_address: str) -> bool:
+def report_ip(server_url: str, api_token: str, ip_address: str, site: str) -> Optional[str]:
     """
     Report the IP address to the server.
+    Returns the ETag of the server's snapshot on success, None otherwise.
     """
     try:
         headers = {
@@ -118,7 +119,8 @@ def report_ip(server_url: str, api_token: str, ip_address: str) -> bool:
         }
         
         data = {
-            'ipAddress': ip_address
+            'ipAddress': ip_address,
+            'site': site
         }
         
         response = requests.post(
@@ -130,16 +132,49 @@ def report_ip(server_url: str, api_token: str, ip_address: str) -> bool:
         
         if response.status_code == 200:
             logger.info(f"Successfully reported IP address: {ip_address}")
-            return True
+            return response.headers.get('ETag', '')
         else:
             logger.error(f"Failed to report IP address. Status code: {response.status_code}, Response: {response.text}")
-            return False
+            return None
     except requests.exceptions.RequestException as e:
         logger.error(f"Network error while reporting IP address: {e}")
-        return False
+        return None
     except Exception as e:
         logger.error(f"Unexpected error while reporting IP address: {e}")
-        return False
+        return None
+
+
+def send_heartbeat(server_url: str, api_token: str, site: str, etag: str) -> Optional[bool]:
+    """
+    Send a conditional heartbeat carrying the ETag of the last report.
+    Returns True if the server still holds that IP, False if a full report
+    is required, None on errors.
+    """
+    try:
+        headers = {
+            'X-API-Token': api_token,
+            'If-Match': etag
+        }
+
+        response = requests.post(
+            f"{server_url}/api/v1/public-ip/heartbeat",
+            headers=headers,
+            params={'site': site},
+            timeout=10
+        )
+
+        if response.status_code == 204:
+            logger.debug("Heartbeat acknowledged")
+            return True
+        elif response.status_code == 412:
+            logger.info("Server snapshot is stale, a full report is required")
+            return False
+        else:
+            logger.error(f"Heartbeat failed. Status code: {response.status_code}")
+            return None
+    except requests.exceptions.RequestException as e:
+        logger.error(f"Network error while sending heartbeat: {e}")
+        return None
 
 
 def main():
@@ -148,6 +183,8 @@ def main():
     api_token = os.getenv('API_TOKEN')
     check_interval = int(os.getenv('CHECK_INTERVAL', '5'))
     network_interface = os.getenv('NETWORK_INTERFACE')
+    site = os.getenv('SITE', 'default')
+    heartbeat_interval = int(os.getenv('HEARTBEAT_INTERVAL', '60'))
     
     if not server_url:
         logger.error("SERVER_URL environment variable is not set")
@@ -165,8 +202,12 @@ def main():
     logger.info(f"Server URL: {server_url}")
     logger.info(f"Check interval: {check_interval} seconds")
     logger.info(f"Monitoring network interface: {network_interface}")
+    logger.info(f"Site: {site}")
+    logger.info(f"Heartbeat interval: {heartbeat_interval} seconds")
     
     last_reported_ip = None
+    last_etag = None
+    last_contact = 0.0
     
     while True:
         try:
@@ -177,13 +218,22 @@ def main():
                     logger.info(f"IPv6 address changed: {last_reported_ip} -> {current_ip}")
                     # Try to report the new IP, but update local state regardless of success
                     try:
-                        report_ip(server_url, api_token, current_ip)
+                        last_etag = report_ip(server_url, api_token, current_ip, site)
                     except Exception as e:
                         logger.error(f"Exception while reporting IP address: {e}")
+                        last_etag = None
                     # Always update last_reported_ip to avoid repeated attempts for the same address
                     last_reported_ip = current_ip
+                    last_contact = time.monotonic()
                 else:
                     logger.debug(f"IPv6 address unchanged: {current_ip}")
+                    if heartbeat_interval > 0 and time.monotonic() - last_contact >= heartbeat_interval:
+                        # Cheap conditional heartbeat; fall back to a full report if the
+                        # server lost or never stored our IP
+                        acknowledged = send_heartbeat(server_url, api_token, site, last_etag) if last_etag else False
+                        if acknowledged is False:
+                            last_etag = report_ip(server_url, api_token, current_ip, site)
+                        last_contact = time.monotonic()
             else:
                 logger.warning("No IPv6 address detected")
             
@@ -4,6 +4,11 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 @Data
 @Configuration
 @ConfigurationProperties(prefix = "autodns")
@@ -14,11 +19,32 @@ public class AutoDnsProperties {
     private String kubesphereNamespace = "kubesphere-controls-system";
     private String ingressClassSuffix = "-namespace";
     private String externalDomainSuffix = "-nj.jsccb.ltd";
+    // When empty, a single mapping is derived from hostSuffix, externalDomainSuffix and aliyun.domain
+    private List<HostMappingConfig> hostMappings = new ArrayList<>();
+    // aliyun | memory
+    private String dnsProvider = "aliyun";
     
     private AliyunConfig aliyun = new AliyunConfig();
     private ApisixConfig apisix = new ApisixConfig();
     private SecurityConfig security = new SecurityConfig();
     private DatabaseConfig database = new DatabaseConfig();
+    private SiteConfig site = new SiteConfig();
+    private StartupConfig startup = new StartupConfig();
+    private DnsProbeConfig dnsProbe = new DnsProbeConfig();
+
+    @Data
+    public static class HostMappingConfig {
+        // Suffix of managed Ingress hosts, e.g. "-k8s.jsccb.ltd" or ".apps.example.com"
+        private String internalSuffix;
+        // Replaces internalSuffix to form the public host, e.g. "-nj.jsccb.ltd"
+        private String externalSuffix;
+        // DNS zone holding the internal records; internalSuffix must end with it
+        private String zone;
+        // DNS zone holding the public records, defaults to zone
+        private String externalZone;
+        // Type of the internal records pointing at the node IPs
+        private String recordType = "A";
+    }
 
     @Data
     public static class AliyunConfig {
@@ -26,12 +52,61 @@ public class AutoDnsProperties {
         private String accessKeySecret;
         private String domain = "jsccb.ltd";
         private String regionId = "cn-hangzhou";
+        private int maxConcurrency = 8;
+        // OperateBatchDomain settings
+        private int batchSize = 500;
+        private long batchWindowMillis = 1000;
+        private long batchPollIntervalMillis = 1000;
+        private int batchTimeoutSeconds = 120;
     }
 
     @Data
     public static class ApisixConfig {
         private String adminUrl;
         private String adminKey;
+        // admin: one Admin API call per route; standalone: render apisix.yaml for APISIX standalone mode
+        private String mode = "admin";
+        private StandaloneConfig standalone = new StandaloneConfig();
+        private UpstreamConfig upstream = new UpstreamConfig();
+        // Prefix of the per-Ingress route annotations (proxy-cache, compression, limit-req, ...)
+        private String annotationPrefix = "autodns.annopick.io/";
+        // proxy-cache zone used when an Ingress does not name one; must exist in APISIX config.yaml
+        private String proxyCacheZone = "disk_cache_one";
+    }
+
+    @Data
+    public static class UpstreamConfig {
+        // host: single node at the internal -k8s hostname; node-ip: one node per node InternalIP
+        private String nodeMode = "host";
+        private int nodeWeight = 1;
+        private int retries = 1;
+        private boolean healthCheckEnabled = true;
+        // tcp | http
+        private String activeCheckType = "tcp";
+        private String activeCheckPath = "/";
+        private int activeCheckTimeoutSeconds = 1;
+        private int healthyIntervalSeconds = 2;
+        private int unhealthyIntervalSeconds = 1;
+        private int healthySuccesses = 2;
+        private int unhealthyFailures = 2;
+        private int keepaliveSize = 320;
+        private int keepaliveIdleTimeoutSeconds = 60;
+        private int keepaliveRequests = 1000;
+        private int connectTimeoutSeconds = 3;
+        private int sendTimeoutSeconds = 60;
+        private int readTimeoutSeconds = 60;
+    }
+
+    @Data
+    public static class StandaloneConfig {
+        // file | configmap
+        private String output = "file";
+        private String filePath = "/usr/local/apisix/conf/apisix.yaml";
+        private String configMapName = "apisix-standalone";
+        private String configMapNamespace = "default";
+        private String configMapKey = "apisix.yaml";
+        private long debounceMillis = 2000;
+        private long maxDelayMillis = 10000;
     }
 
     @Data
@@ -42,5 +117,42 @@ public class AutoDnsProperties {
     @Data
     public static class DatabaseConfig {
         private int recordRetentionDays = 365;
+        // compact: deduplicated, compressed bodies in apisix_payloads; plain: TEXT columns
+        private String auditFormat = "compact";
+        // Store route documents as a JSON merge patch against the previous one of the route
+        private boolean auditDiffEnabled = true;
+        // Patches before the next full document, bounds the work of reading one body
+        private int auditMaxPatchChain = 16;
+        // Bodies shorter than this stay inline in apisix_operations
+        private int auditInlineThreshold = 256;
+    }
+
+    @Data
+    public static class SiteConfig {
+        private String annotation = "autodns.annopick.io/site";
+        private String defaultSite = "default";
+        // ingressClassName -> site, used when the Ingress carries no site annotation
+        private Map<String, String> ingressClassSites = new HashMap<>();
+        private int updateThreads = 4;
+    }
+
+    @Data
+    public static class StartupConfig {
+        // Readiness waits for the Ingress informer sync at most this long after JVM start
+        private int timeoutSeconds = 60;
+    }
+
+    @Data
+    public static class DnsProbeConfig {
+        private boolean enabled = false;
+        // host or host:port ([v6]:port); when empty, the authoritative servers of each zone
+        private List<String> resolvers = new ArrayList<>();
+        private long initialDelayMillis = 500;
+        private long maxIntervalMillis = 10000;
+        private int timeoutSeconds = 300;
+        private int queryTimeoutMillis = 1000;
+        // Writes beyond this many probes in flight are not probed
+        private int maxInFlight = 5000;
+        private int threads = 2;
     }
 }
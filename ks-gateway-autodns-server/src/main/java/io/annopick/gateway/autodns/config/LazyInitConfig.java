@@ -0,0 +1,24 @@
+package io.annopick.gateway.autodns.config;
+
+import io.annopick.gateway.autodns.service.DatabaseCleanupService;
+import io.annopick.gateway.autodns.service.IngressWatcher;
+import io.annopick.gateway.autodns.service.PublicIpCache;
+import io.annopick.gateway.autodns.service.StartupHealthIndicator;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class LazyInitConfig {
+
+    /**
+     * Beans nothing injects but that must run from startup: the Ingress informer, the public IP
+     * snapshot, scheduled cleanup and the readiness indicator. Everything else is created on
+     * first use when {@code spring.main.lazy-initialization} is on (faststart profile).
+     */
+    @Bean
+    static LazyInitializationExcludeFilter eagerAutoDnsBeans() {
+        return LazyInitializationExcludeFilter.forBeanTypes(
+            IngressWatcher.class, PublicIpCache.class, DatabaseCleanupService.class, StartupHealthIndicator.class);
+    }
+}
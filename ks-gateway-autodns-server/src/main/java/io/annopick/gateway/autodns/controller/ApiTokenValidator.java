@@ -0,0 +1,28 @@
+package io.annopick.gateway.autodns.controller;
+
+import io.annopick.gateway.autodns.config.AutoDnsProperties;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+@Component
+@RequiredArgsConstructor
+public class ApiTokenValidator {
+
+    private final AutoDnsProperties properties;
+
+    /**
+     * Constant-time comparison against {@code autodns.security.api-token}.
+     */
+    public boolean isValid(String apiToken) {
+        String expected = properties.getSecurity().getApiToken();
+        if (expected == null || apiToken == null) {
+            return false;
+        }
+        return MessageDigest.isEqual(
+            expected.getBytes(StandardCharsets.UTF_8),
+            apiToken.getBytes(StandardCharsets.UTF_8));
+    }
+}
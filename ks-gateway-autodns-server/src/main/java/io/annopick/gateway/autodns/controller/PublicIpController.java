@@ -1,19 +1,16 @@
 package io.annopick.gateway.autodns.controller;
 
 import io.annopick.gateway.autodns.config.AutoDnsProperties;
-import io.annopick.gateway.autodns.model.DnsRecord;
-import io.annopick.gateway.autodns.model.PublicIpRecord;
-import io.annopick.gateway.autodns.repository.DnsRecordRepository;
-import io.annopick.gateway.autodns.repository.PublicIpRecordRepository;
-import io.annopick.gateway.autodns.service.AliyunDnsService;
+import io.annopick.gateway.autodns.service.PublicIpCache;
+import io.annopick.gateway.autodns.service.SitePublicDnsService;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.List;
 import java.util.Optional;
 
 @Slf4j
@@ -22,70 +19,79 @@ import java.util.Optional;
 @RequiredArgsConstructor
 public class PublicIpController {
 
-    private final PublicIpRecordRepository publicIpRecordRepository;
-    private final DnsRecordRepository dnsRecordRepository;
-    private final AliyunDnsService aliyunDnsService;
+    private final PublicIpCache publicIpCache;
+    private final SitePublicDnsService sitePublicDnsService;
+    private final ApiTokenValidator apiTokenValidator;
     private final AutoDnsProperties properties;
 
     @PostMapping("/public-ip")
     public ResponseEntity<String> reportPublicIp(
             @RequestHeader("X-API-Token") String apiToken,
             @RequestBody PublicIpRequest request) {
-        
-        if (!properties.getSecurity().getApiToken().equals(apiToken)) {
+
+        if (!apiTokenValidator.isValid(apiToken)) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Invalid API token");
         }
 
+        if (request.getIpAddress() == null || request.getIpAddress().isBlank()) {
+            return ResponseEntity.badRequest().body("ipAddress is required");
+        }
+
+        String site = resolveSite(request.getSite());
+
+        // Unchanged reports are answered from memory without touching the database
+        Optional<PublicIpCache.Snapshot> current = publicIpCache.get(site);
+        if (current.isPresent() && current.get().ipAddress().equals(request.getIpAddress())) {
+            return ResponseEntity.ok()
+                .header(HttpHeaders.ETAG, current.get().etag())
+                .body("Public IP unchanged");
+        }
+
         try {
-            Optional<PublicIpRecord> existingRecord = publicIpRecordRepository.findByIdentifier("default");
-            
-            if (existingRecord.isPresent()) {
-                PublicIpRecord record = existingRecord.get();
-                if (!record.getIpAddress().equals(request.getIpAddress())) {
-                    log.info("Public IP changed from {} to {}", record.getIpAddress(), request.getIpAddress());
-                    record.setIpAddress(request.getIpAddress());
-                    publicIpRecordRepository.save(record);
-                    
-                    updateExternalDnsRecords(request.getIpAddress());
-                }
-            } else {
-                PublicIpRecord record = new PublicIpRecord();
-                record.setIdentifier("default");
-                record.setIpAddress(request.getIpAddress());
-                publicIpRecordRepository.save(record);
-                
-                updateExternalDnsRecords(request.getIpAddress());
+            // Held across the submit too (update locks the cache), so site updates are queued
+            // in the order the IPs were stored and each deletes the IP it replaced
+            synchronized (publicIpCache) {
+                publicIpCache.update(site, request.getIpAddress()).ifPresent(change ->
+                    sitePublicDnsService.submit(site, request.getIpAddress(), change.previousIpAddress()));
             }
 
-            return ResponseEntity.ok("Public IP updated successfully");
+            return ResponseEntity.ok()
+                .header(HttpHeaders.ETAG, publicIpCache.get(site).map(PublicIpCache.Snapshot::etag).orElse(""))
+                .body("Public IP updated successfully");
         } catch (Exception e) {
-            log.error("Failed to update public IP", e);
+            log.error("Failed to update public IP of site {}", site, e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Failed to update public IP");
         }
     }
 
-    private void updateExternalDnsRecords(String ipAddress) throws Exception {
-        List<DnsRecord> allRecords = dnsRecordRepository.findAll();
-        
-        for (DnsRecord record : allRecords) {
-            String externalHost = record.getHost().replace(properties.getHostSuffix(), properties.getExternalDomainSuffix());
-            String externalRr = externalHost.replace("." + properties.getAliyun().getDomain(), "");
-            
-            var existingDnsRecord = aliyunDnsService.queryDomainRecord(externalRr);
-            if (existingDnsRecord != null) {
-                String recordType = ipAddress.contains(":") ? "AAAA" : "A";
-                aliyunDnsService.updateDomainRecord(existingDnsRecord.getRecordId(), externalRr, recordType, ipAddress);
-            } else {
-                String recordType = ipAddress.contains(":") ? "AAAA" : "A";
-                aliyunDnsService.addDomainRecord(externalRr, recordType, ipAddress);
-            }
-            
-            log.info("Updated external DNS record: {} -> {}", externalHost, ipAddress);
+    /**
+     * Conditional heartbeat: the agent sends the ETag of its last successful report.
+     * 204 means the server still holds that IP, 412 means the agent must send a full report.
+     */
+    @PostMapping("/public-ip/heartbeat")
+    public ResponseEntity<Void> heartbeat(
+            @RequestHeader("X-API-Token") String apiToken,
+            @RequestHeader(HttpHeaders.IF_MATCH) String ifMatch,
+            @RequestParam(value = "site", required = false) String site) {
+
+        if (!apiTokenValidator.isValid(apiToken)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+
+        Optional<PublicIpCache.Snapshot> current = publicIpCache.get(resolveSite(site));
+        if (current.isEmpty() || !current.get().etag().equals(ifMatch.trim())) {
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
         }
+        return ResponseEntity.noContent().header(HttpHeaders.ETAG, current.get().etag()).build();
+    }
+
+    private String resolveSite(String site) {
+        return site != null && !site.isBlank() ? site : properties.getSite().getDefaultSite();
     }
 
     @Data
     public static class PublicIpRequest {
         private String ipAddress;
+        private String site;
     }
 }
@@ -0,0 +1,187 @@
+package io.annopick.gateway.autodns.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.annopick.gateway.autodns.model.ApisixOperation;
+import io.annopick.gateway.autodns.model.DnsRecord;
+import io.annopick.gateway.autodns.repository.ApisixOperationRepository;
+import io.annopick.gateway.autodns.repository.DnsRecordRepository;
+import io.annopick.gateway.autodns.service.ApisixAuditStore;
+import jakarta.persistence.EntityManager;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Read-only access to dns_records and apisix_operations. Pages use keyset pagination on
+ * the primary key (newest first); exports stream NDJSON straight from a database cursor.
+ */
+@Slf4j
+@RestController
+@RequestMapping("/api/v1")
+public class RecordQueryController {
+
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+    private static final int DEFAULT_LIMIT = 100;
+    private static final int MAX_LIMIT = 500;
+
+    private final DnsRecordRepository dnsRecordRepository;
+    private final ApisixOperationRepository apisixOperationRepository;
+    private final ApisixAuditStore apisixAuditStore;
+    private final ApiTokenValidator apiTokenValidator;
+    private final ObjectMapper objectMapper;
+    private final EntityManager entityManager;
+    private final TransactionTemplate readOnlyTransaction;
+
+    public RecordQueryController(DnsRecordRepository dnsRecordRepository,
+                                 ApisixOperationRepository apisixOperationRepository,
+                                 ApisixAuditStore apisixAuditStore,
+                                 ApiTokenValidator apiTokenValidator,
+                                 ObjectMapper objectMapper,
+                                 EntityManager entityManager,
+                                 PlatformTransactionManager transactionManager) {
+        this.dnsRecordRepository = dnsRecordRepository;
+        this.apisixOperationRepository = apisixOperationRepository;
+        this.apisixAuditStore = apisixAuditStore;
+        this.apiTokenValidator = apiTokenValidator;
+        this.objectMapper = objectMapper;
+        this.entityManager = entityManager;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    @GetMapping("/dns-records")
+    public ResponseEntity<CursorPage<DnsRecord>> listDnsRecords(
+            @RequestHeader("X-API-Token") String apiToken,
+            @RequestParam(required = false) String host,
+            @RequestParam(required = false) String site,
+            @RequestParam(required = false) Long cursor,
+            @RequestParam(defaultValue = "" + DEFAULT_LIMIT) int limit) {
+
+        if (!apiTokenValidator.isValid(apiToken)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+
+        int pageSize = clampLimit(limit);
+        List<DnsRecord> items = dnsRecordRepository.findPage(
+            cursor != null ? cursor : Long.MAX_VALUE, host, site, PageRequest.of(0, pageSize));
+        return ResponseEntity.ok(CursorPage.of(items, pageSize, DnsRecord::getId));
+    }
+
+    @GetMapping("/apisix-operations")
+    public ResponseEntity<CursorPage<ApisixOperation>> listApisixOperations(
+            @RequestHeader("X-API-Token") String apiToken,
+            @RequestParam(required = false) String host,
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) Long cursor,
+            @RequestParam(defaultValue = "" + DEFAULT_LIMIT) int limit) {
+
+        if (!apiTokenValidator.isValid(apiToken)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+
+        int pageSize = clampLimit(limit);
+        List<ApisixOperation> items = apisixOperationRepository.findPage(
+            cursor != null ? cursor : Long.MAX_VALUE, host, status, from, to, PageRequest.of(0, pageSize));
+        items.forEach(apisixAuditStore::resolveBodies);
+        return ResponseEntity.ok(CursorPage.of(items, pageSize, ApisixOperation::getId));
+    }
+
+    @GetMapping("/dns-records/export")
+    public ResponseEntity<StreamingResponseBody> exportDnsRecords(
+            @RequestHeader("X-API-Token") String apiToken,
+            @RequestParam(required = false) String host,
+            @RequestParam(required = false) String site,
+            @RequestParam(defaultValue = "0") long after) {
+
+        if (!apiTokenValidator.isValid(apiToken)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+
+        return ResponseEntity.ok()
+            .contentType(NDJSON)
+            .body(out -> streamNdjson(out, () -> dnsRecordRepository.streamAfter(after, host, site), row -> { }));
+    }
+
+    @GetMapping("/apisix-operations/export")
+    public ResponseEntity<StreamingResponseBody> exportApisixOperations(
+            @RequestHeader("X-API-Token") String apiToken,
+            @RequestParam(required = false) String host,
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(defaultValue = "0") long after) {
+
+        if (!apiTokenValidator.isValid(apiToken)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+
+        return ResponseEntity.ok()
+            .contentType(NDJSON)
+            .body(out -> streamNdjson(out, () -> apisixOperationRepository.streamAfter(after, host, status, from, to),
+                apisixAuditStore::resolveBodies));
+    }
+
+    private <T> void streamNdjson(OutputStream out, Supplier<Stream<T>> rows, Consumer<T> prepare) throws IOException {
+        BufferedOutputStream buffered = new BufferedOutputStream(out, 64 * 1024);
+        try {
+            readOnlyTransaction.executeWithoutResult(tx -> {
+                try (Stream<T> stream = rows.get()) {
+                    stream.forEach(row -> {
+                        prepare.accept(row);
+                        try {
+                            buffered.write(objectMapper.writeValueAsBytes(row));
+                            buffered.write('\n');
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        // Keep the persistence context from accumulating every exported row
+                        entityManager.detach(row);
+                    });
+                }
+            });
+        } catch (UncheckedIOException e) {
+            log.warn("NDJSON export aborted: {}", e.getCause().getMessage());
+            throw e.getCause();
+        }
+        buffered.flush();
+    }
+
+    private static int clampLimit(int limit) {
+        return Math.max(1, Math.min(limit, MAX_LIMIT));
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class CursorPage<T> {
+        private List<T> items;
+        // Pass as "cursor" to fetch the next page; null on the last page
+        private Long nextCursor;
+
+        static <T> CursorPage<T> of(List<T> items, int pageSize, Function<T, Long> idOf) {
+            Long nextCursor = items.size() == pageSize ? idOf.apply(items.get(items.size() - 1)) : null;
+            return new CursorPage<>(items, nextCursor);
+        }
+    }
+}
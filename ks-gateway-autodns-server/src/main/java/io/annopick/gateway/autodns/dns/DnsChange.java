@@ -0,0 +1,29 @@
+package io.annopick.gateway.autodns.dns;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class DnsChange {
+
+    public static final String ADD = "RR_ADD";
+    public static final String DELETE = "RR_DEL";
+
+    private String operation;
+    private String zone;
+    private String rr;
+    private String type;
+    private String value;
+
+    public static DnsChange add(String zone, String rr, String type, String value) {
+        return new DnsChange(ADD, zone, rr, type, value);
+    }
+
+    /**
+     * Deletes the records of an RR; {@code type} and {@code value} narrow the match when non-null.
+     */
+    public static DnsChange delete(String zone, String rr, String type, String value) {
+        return new DnsChange(DELETE, zone, rr, type, value);
+    }
+}
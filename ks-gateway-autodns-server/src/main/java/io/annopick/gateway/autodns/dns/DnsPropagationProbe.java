@@ -0,0 +1,405 @@
+package io.annopick.gateway.autodns.dns;
+
+import io.annopick.gateway.autodns.config.AutoDnsProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import javax.naming.Context;
+import javax.naming.NameNotFoundException;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.InitialDirContext;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures how long a DNS write takes to be served. After a provider reports a write as
+ * done, the RR is queried on every resolver of {@code autodns.dns-probe.resolvers}
+ * (by default the zone's authoritative servers, found through its NS records) with
+ * exponential backoff until each one answers with the new state. Latency is published
+ * per resolver ({@code autodns.dns.propagation.resolver.time}) and until the last
+ * resolver caught up ({@code autodns.dns.propagation.time}); resolvers that never did
+ * count as {@code autodns.dns.propagation.timeouts}. A later write to the same RR that
+ * contradicts a pending probe (a delete of the value an add waits for, or any write
+ * after a delete) supersedes it, so quick successive changes are not reported as
+ * timeouts.
+ */
+@Slf4j
+@Service
+public class DnsPropagationProbe {
+
+    public static final String ADD = "add";
+    public static final String UPDATE = "update";
+    public static final String DELETE = "delete";
+
+    private static final long AUTHORITATIVE_CACHE_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final long AUTHORITATIVE_RETRY_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    private static final String[] ADDRESS_TYPES = {"A", "AAAA"};
+
+    private final AutoDnsProperties.DnsProbeConfig config;
+    private final MeterRegistry meterRegistry;
+    private final ScheduledThreadPoolExecutor scheduler;
+
+    // fqdn -> probes still waiting for some resolver
+    private final Map<String, List<Probe>> active = new HashMap<>();
+    private int activeCount;
+    private final Map<String, CachedResolvers> authoritativeResolvers = new ConcurrentHashMap<>();
+
+    private record Resolver(String name, String url) {
+    }
+
+    private record CachedResolvers(List<Resolver> resolvers, long expiresAt) {
+    }
+
+    private static final class Probe {
+        final String operation;
+        final String zone;
+        final String fqdn;
+        // null: any address type
+        final String type;
+        // null: any value, only with DELETE
+        final String value;
+        final String recordId;
+        final long startNanos = System.nanoTime();
+        List<Resolver> waiting;
+        long intervalMillis;
+        volatile boolean cancelled;
+        ScheduledFuture<?> next;
+
+        Probe(String operation, String zone, String fqdn, String type, String value, String recordId) {
+            this.operation = operation;
+            this.zone = zone;
+            this.fqdn = fqdn;
+            this.type = type;
+            this.value = value;
+            this.recordId = recordId;
+        }
+
+        boolean expectsPresent() {
+            return !DELETE.equals(operation);
+        }
+    }
+
+    public DnsPropagationProbe(AutoDnsProperties properties, MeterRegistry meterRegistry) {
+        this.config = properties.getDnsProbe();
+        this.meterRegistry = meterRegistry;
+
+        AtomicInteger counter = new AtomicInteger();
+        this.scheduler = new ScheduledThreadPoolExecutor(Math.max(1, config.getThreads()), r -> {
+            Thread t = new Thread(r, "dns-probe-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.scheduler.setRemoveOnCancelPolicy(true);
+
+        Gauge.builder("autodns.dns.propagation.inflight", this, p -> p.inFlight())
+            .description("DNS writes whose propagation is being probed")
+            .register(meterRegistry);
+        if (config.isEnabled()) {
+            log.info("DNS propagation probe enabled, resolvers: {}",
+                config.getResolvers().isEmpty() ? "authoritative" : config.getResolvers());
+        }
+    }
+
+    /**
+     * Starts probing a successful write. {@code value} must be set for ADD and UPDATE;
+     * for DELETE, null {@code type} or {@code value} means no record of any type or value.
+     */
+    public void track(String operation, String zone, String rr, String type, String value, String recordId) {
+        if (!config.isEnabled() || zone == null || rr == null || (value == null && !DELETE.equals(operation))) {
+            return;
+        }
+        String fqdn = "@".equals(rr) ? normalizeName(zone) : normalizeName(rr + "." + zone);
+        String probeType = type != null ? type.toUpperCase(Locale.ROOT) : null;
+        Probe probe = new Probe(operation, normalizeName(zone), fqdn, probeType,
+            value != null ? normalizeValue(probeType, value) : null, recordId);
+
+        synchronized (active) {
+            if (activeCount >= config.getMaxInFlight()) {
+                log.debug("Not probing {} {}, {} probes in flight", operation, fqdn, activeCount);
+                return;
+            }
+            List<Probe> probes = active.computeIfAbsent(fqdn, k -> new ArrayList<>());
+            for (Iterator<Probe> it = probes.iterator(); it.hasNext(); ) {
+                Probe old = it.next();
+                if (supersedes(probe, old)) {
+                    it.remove();
+                    activeCount--;
+                    cancel(old);
+                    log.debug("Propagation probe {} {} superseded by {}", old.operation, fqdn, operation);
+                }
+            }
+            probes.add(probe);
+            activeCount++;
+        }
+
+        probe.intervalMillis = Math.max(50, config.getInitialDelayMillis());
+        schedule(probe, probe.intervalMillis);
+    }
+
+    private static boolean supersedes(Probe probe, Probe old) {
+        if (probe.recordId != null && probe.recordId.equals(old.recordId)) {
+            return true;
+        }
+        if (probe.type != null && old.type != null && !probe.type.equals(old.type)) {
+            return false;
+        }
+        if (probe.expectsPresent() == old.expectsPresent()) {
+            return false;
+        }
+        if (probe.expectsPresent()) {
+            // A write after a delete: the RR will not be empty, nor the value gone if re-added
+            return old.value == null || old.value.equals(probe.value);
+        }
+        // Only a delete of the very value an add waits for; an RR-wide delete in the same
+        // batch as a rotation must not hide the new value's propagation
+        return probe.value != null && probe.value.equals(old.value);
+    }
+
+    private void schedule(Probe probe, long delayMillis) {
+        try {
+            ScheduledFuture<?> next = scheduler.schedule(() -> poll(probe), delayMillis, TimeUnit.MILLISECONDS);
+            synchronized (probe) {
+                probe.next = next;
+            }
+        } catch (Exception e) {
+            // Rejected during shutdown
+            finish(probe);
+        }
+    }
+
+    private void cancel(Probe probe) {
+        probe.cancelled = true;
+        synchronized (probe) {
+            if (probe.next != null) {
+                probe.next.cancel(false);
+            }
+        }
+    }
+
+    private void poll(Probe probe) {
+        if (probe.cancelled) {
+            return;
+        }
+        try {
+            if (probe.waiting == null) {
+                probe.waiting = new ArrayList<>(resolversFor(probe.zone));
+                if (probe.waiting.isEmpty()) {
+                    log.warn("No resolvers to probe {} {}, skipping", probe.operation, probe.fqdn);
+                    finish(probe);
+                    return;
+                }
+            }
+
+            for (Iterator<Resolver> it = probe.waiting.iterator(); it.hasNext() && !probe.cancelled; ) {
+                Resolver resolver = it.next();
+                if (isServed(probe, resolver)) {
+                    it.remove();
+                    timer("autodns.dns.propagation.resolver.time", probe.operation, resolver.name())
+                        .record(System.nanoTime() - probe.startNanos, TimeUnit.NANOSECONDS);
+                }
+            }
+            if (probe.cancelled) {
+                return;
+            }
+
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - probe.startNanos);
+            if (probe.waiting.isEmpty()) {
+                timer("autodns.dns.propagation.time", probe.operation, null)
+                    .record(System.nanoTime() - probe.startNanos, TimeUnit.NANOSECONDS);
+                log.debug("{} {} {} propagated in {} ms", probe.operation, probe.fqdn, probe.value, elapsedMillis);
+                finish(probe);
+                return;
+            }
+
+            long remainingMillis = TimeUnit.SECONDS.toMillis(config.getTimeoutSeconds()) - elapsedMillis;
+            if (remainingMillis <= 0) {
+                for (Resolver resolver : probe.waiting) {
+                    Counter.builder("autodns.dns.propagation.timeouts")
+                        .tag("operation", probe.operation)
+                        .tag("resolver", resolver.name())
+                        .description("DNS writes a resolver did not serve within the probe timeout")
+                        .register(meterRegistry)
+                        .increment();
+                }
+                log.warn("{} {} {} not served by {} after {} s", probe.operation, probe.fqdn, probe.value,
+                    probe.waiting.stream().map(Resolver::name).toList(), config.getTimeoutSeconds());
+                finish(probe);
+                return;
+            }
+
+            probe.intervalMillis = Math.max(50, Math.min(probe.intervalMillis * 2, config.getMaxIntervalMillis()));
+            schedule(probe, Math.min(probe.intervalMillis, remainingMillis));
+        } catch (Exception e) {
+            log.error("Propagation probe for {} failed", probe.fqdn, e);
+            finish(probe);
+        }
+    }
+
+    private void finish(Probe probe) {
+        synchronized (active) {
+            List<Probe> probes = active.get(probe.fqdn);
+            if (probes != null && probes.remove(probe)) {
+                activeCount--;
+                if (probes.isEmpty()) {
+                    active.remove(probe.fqdn);
+                }
+            }
+        }
+    }
+
+    private int inFlight() {
+        synchronized (active) {
+            return activeCount;
+        }
+    }
+
+    private boolean isServed(Probe probe, Resolver resolver) {
+        Set<String> values;
+        try {
+            values = query(resolver.url(), probe.fqdn, probe.type != null ? new String[]{probe.type} : ADDRESS_TYPES);
+        } catch (NamingException e) {
+            // Timeouts and SERVFAIL: not served yet, retried on the next poll
+            log.debug("Query for {} on {} failed: {}", probe.fqdn, resolver.name(), e.getMessage());
+            return false;
+        }
+        if (probe.expectsPresent()) {
+            return values.contains(probe.value);
+        }
+        return probe.value == null ? values.isEmpty() : !values.contains(probe.value);
+    }
+
+    private Set<String> query(String url, String fqdn, String[] types) throws NamingException {
+        Hashtable<String, String> env = new Hashtable<>();
+        env.put(Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.dns.DnsContextFactory");
+        if (url != null) {
+            env.put(Context.PROVIDER_URL, url);
+        }
+        env.put("com.sun.jndi.dns.timeout.initial", String.valueOf(Math.max(100, config.getQueryTimeoutMillis())));
+        env.put("com.sun.jndi.dns.timeout.retries", "1");
+
+        DirContext context = new InitialDirContext(env);
+        try {
+            Attributes attributes = context.getAttributes(fqdn + ".", types);
+            Set<String> values = new HashSet<>();
+            for (String type : types) {
+                Attribute attribute = attributes.get(type);
+                if (attribute == null) {
+                    continue;
+                }
+                NamingEnumeration<?> all = attribute.getAll();
+                while (all.hasMore()) {
+                    values.add(normalizeValue(type, String.valueOf(all.next())));
+                }
+            }
+            return values;
+        } catch (NameNotFoundException e) {
+            return Set.of();
+        } finally {
+            context.close();
+        }
+    }
+
+    private List<Resolver> resolversFor(String zone) {
+        if (!config.getResolvers().isEmpty()) {
+            return config.getResolvers().stream()
+                .filter(r -> r != null && !r.isBlank())
+                .map(r -> new Resolver(r.trim(), "dns://" + r.trim()))
+                .toList();
+        }
+        CachedResolvers cached = authoritativeResolvers.get(zone);
+        if (cached != null && cached.expiresAt() > System.currentTimeMillis()) {
+            return cached.resolvers();
+        }
+
+        List<Resolver> resolvers = new ArrayList<>();
+        try {
+            // NS lookup through the platform's resolvers, then one address per name server
+            for (String nameServer : query(null, zone, new String[]{"NS"})) {
+                InetAddress address = preferIpv4(InetAddress.getAllByName(nameServer));
+                String host = address instanceof Inet4Address
+                    ? address.getHostAddress()
+                    : "[" + address.getHostAddress() + "]";
+                resolvers.add(new Resolver(nameServer, "dns://" + host));
+            }
+            log.info("Probing zone {} on its authoritative servers {}", zone, resolvers.stream().map(Resolver::name).toList());
+        } catch (NamingException | UnknownHostException e) {
+            log.warn("Failed to look up the authoritative servers of {}: {}", zone, e.getMessage());
+            resolvers.clear();
+        }
+        long ttl = resolvers.isEmpty() ? AUTHORITATIVE_RETRY_MILLIS : AUTHORITATIVE_CACHE_MILLIS;
+        authoritativeResolvers.put(zone, new CachedResolvers(List.copyOf(resolvers), System.currentTimeMillis() + ttl));
+        return resolvers;
+    }
+
+    private Timer timer(String name, String operation, String resolver) {
+        Timer.Builder builder = Timer.builder(name)
+            .tag("operation", operation)
+            .publishPercentiles(0.5, 0.9, 0.99)
+            .publishPercentileHistogram()
+            .maximumExpectedValue(Duration.ofSeconds(Math.max(1, config.getTimeoutSeconds())));
+        if (resolver != null) {
+            builder.tag("resolver", resolver)
+                .description("Time from a DNS write until the resolver served it");
+        } else {
+            builder.description("Time from a DNS write until every probed resolver served it");
+        }
+        return builder.register(meterRegistry);
+    }
+
+    private static InetAddress preferIpv4(InetAddress[] addresses) {
+        for (InetAddress address : addresses) {
+            if (address instanceof Inet4Address) {
+                return address;
+            }
+        }
+        return addresses[0];
+    }
+
+    private static String normalizeName(String name) {
+        String lower = name.trim().toLowerCase(Locale.ROOT);
+        return lower.endsWith(".") ? lower.substring(0, lower.length() - 1) : lower;
+    }
+
+    private static String normalizeValue(String type, String value) {
+        boolean address = type == null || "A".equals(type) || "AAAA".equals(type);
+        // Literals only, never a lookup: canonical form for AAAA ("::1" vs "0:0:0:0:0:0:0:1")
+        if (address && (value.indexOf(':') >= 0 || value.matches("[0-9.]+"))) {
+            try {
+                return InetAddress.getByName(value).getHostAddress();
+            } catch (UnknownHostException e) {
+                return value;
+            }
+        }
+        return normalizeName(value);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+}
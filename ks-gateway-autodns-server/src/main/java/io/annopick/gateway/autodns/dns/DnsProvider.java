@@ -0,0 +1,34 @@
+package io.annopick.gateway.autodns.dns;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * DNS backend used by the watcher and the public IP fan-out. All operations are
+ * non-blocking; write failures complete normally with an unsuccessful {@link DnsResult}
+ * rather than exceptionally, so many calls can be pipelined and joined together.
+ * Record names are RRs relative to the zone they are managed in.
+ */
+public interface DnsProvider {
+
+    CompletableFuture<DnsResult> addRecord(String zone, String rr, String type, String value);
+
+    /**
+     * Record ids are unique across zones; {@code zone} is only echoed in the result.
+     */
+    CompletableFuture<DnsResult> updateRecord(String recordId, String zone, String rr, String type, String value);
+
+    CompletableFuture<DnsResult> deleteRecord(String recordId);
+
+    /**
+     * Empty only when the RR has no record; a failed lookup completes exceptionally, so
+     * callers never mistake an API error for "not found".
+     */
+    CompletableFuture<Optional<DnsRecordInfo>> queryRecord(String zone, String rr);
+
+    /**
+     * Applies many changes at once. The result list is in the order of {@code changes}.
+     */
+    CompletableFuture<List<DnsResult>> applyBatch(List<DnsChange> changes);
+}
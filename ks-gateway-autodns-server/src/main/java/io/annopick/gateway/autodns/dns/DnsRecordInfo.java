@@ -0,0 +1,17 @@
+package io.annopick.gateway.autodns.dns;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DnsRecordInfo {
+
+    private String recordId;
+    private String zone;
+    private String rr;
+    private String type;
+    private String value;
+}
@@ -0,0 +1,31 @@
+package io.annopick.gateway.autodns.dns;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DnsResult {
+
+    private String zone;
+    private String rr;
+    private String type;
+    private String value;
+    private boolean success;
+    private String recordId;
+    private String reason;
+
+    public static DnsResult ok(String zone, String rr, String type, String value, String recordId) {
+        return new DnsResult(zone, rr, type, value, true, recordId, null);
+    }
+
+    public static DnsResult failed(String zone, String rr, String type, String value, String reason) {
+        return new DnsResult(zone, rr, type, value, false, null, reason);
+    }
+
+    public static DnsResult failed(DnsChange change, String reason) {
+        return failed(change.getZone(), change.getRr(), change.getType(), change.getValue(), reason);
+    }
+}
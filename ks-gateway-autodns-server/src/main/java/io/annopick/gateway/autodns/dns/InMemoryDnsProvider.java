@@ -0,0 +1,132 @@
+package io.annopick.gateway.autodns.dns;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Zero-latency provider keeping records in memory. Every future is already complete,
+ * which takes the cloud API out of pipeline throughput measurements. Enabled with
+ * {@code autodns.dns-provider=memory}.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "autodns.dns-provider", havingValue = "memory")
+public class InMemoryDnsProvider implements DnsProvider {
+
+    private final Map<String, DnsRecordInfo> recordsById = new ConcurrentHashMap<>();
+    // zone|rr -> records in creation order; lists are replaced, never mutated, so reads need no lock
+    private final Map<String, List<DnsRecordInfo>> recordsByRr = new ConcurrentHashMap<>();
+    private long nextRecordId = 1;
+
+    public InMemoryDnsProvider() {
+        log.warn("Using in-memory DNS provider, no records are published");
+    }
+
+    @Override
+    public CompletableFuture<DnsResult> addRecord(String zone, String rr, String type, String value) {
+        return CompletableFuture.completedFuture(add(zone, rr, type, value));
+    }
+
+    @Override
+    public synchronized CompletableFuture<DnsResult> updateRecord(String recordId, String zone, String rr, String type, String value) {
+        DnsRecordInfo old = recordsById.get(recordId);
+        if (old == null) {
+            return CompletableFuture.completedFuture(DnsResult.failed(zone, rr, type, value, "Record " + recordId + " not found"));
+        }
+        remove(old);
+        put(new DnsRecordInfo(recordId, old.getZone(), rr, type, value));
+        return CompletableFuture.completedFuture(DnsResult.ok(old.getZone(), rr, type, value, recordId));
+    }
+
+    @Override
+    public synchronized CompletableFuture<DnsResult> deleteRecord(String recordId) {
+        DnsRecordInfo old = recordsById.get(recordId);
+        if (old == null) {
+            return CompletableFuture.completedFuture(DnsResult.failed(null, null, null, null, "Record " + recordId + " not found"));
+        }
+        remove(old);
+        return CompletableFuture.completedFuture(DnsResult.ok(old.getZone(), old.getRr(), old.getType(), old.getValue(), recordId));
+    }
+
+    @Override
+    public CompletableFuture<Optional<DnsRecordInfo>> queryRecord(String zone, String rr) {
+        List<DnsRecordInfo> records = recordsByRr.getOrDefault(key(zone, rr), List.of());
+        return CompletableFuture.completedFuture(records.stream().findFirst());
+    }
+
+    @Override
+    public synchronized CompletableFuture<List<DnsResult>> applyBatch(List<DnsChange> changes) {
+        List<DnsResult> results = new ArrayList<>(changes.size());
+        for (DnsChange change : changes) {
+            if (DnsChange.ADD.equals(change.getOperation())) {
+                results.add(add(change.getZone(), change.getRr(), change.getType(), change.getValue()));
+                continue;
+            }
+            int removed = 0;
+            for (DnsRecordInfo record : recordsByRr.getOrDefault(key(change.getZone(), change.getRr()), List.of())) {
+                if ((change.getType() == null || record.getType().equals(change.getType()))
+                        && (change.getValue() == null || record.getValue().equalsIgnoreCase(change.getValue()))) {
+                    remove(record);
+                    removed++;
+                }
+            }
+            // Like Alidns, deleting a record that does not exist is a failure
+            results.add(removed == 0
+                ? DnsResult.failed(change, "No matching record")
+                : new DnsResult(change.getZone(), change.getRr(), change.getType(), change.getValue(), true, null, null));
+        }
+        return CompletableFuture.completedFuture(results);
+    }
+
+    public List<DnsRecordInfo> getRecords() {
+        return List.copyOf(recordsById.values());
+    }
+
+    public synchronized void clear() {
+        recordsById.clear();
+        recordsByRr.clear();
+    }
+
+    private synchronized DnsResult add(String zone, String rr, String type, String value) {
+        boolean duplicate = recordsByRr.getOrDefault(key(zone, rr), List.of()).stream()
+            .anyMatch(r -> r.getType().equals(type) && r.getValue().equalsIgnoreCase(value));
+        if (duplicate) {
+            return DnsResult.failed(zone, rr, type, value, "DomainRecordDuplicate");
+        }
+        String recordId = String.valueOf(nextRecordId++);
+        put(new DnsRecordInfo(recordId, zone, rr, type, value));
+        return DnsResult.ok(zone, rr, type, value, recordId);
+    }
+
+    private static String key(String zone, String rr) {
+        return zone + "|" + rr;
+    }
+
+    private void put(DnsRecordInfo record) {
+        recordsById.put(record.getRecordId(), record);
+        String key = key(record.getZone(), record.getRr());
+        List<DnsRecordInfo> records = new ArrayList<>(recordsByRr.getOrDefault(key, List.of()));
+        records.add(record);
+        recordsByRr.put(key, List.copyOf(records));
+    }
+
+    private void remove(DnsRecordInfo record) {
+        recordsById.remove(record.getRecordId());
+        String key = key(record.getZone(), record.getRr());
+        List<DnsRecordInfo> records = new ArrayList<>(recordsByRr.getOrDefault(key, List.of()));
+        records.removeIf(r -> r.getRecordId().equals(record.getRecordId()));
+        if (records.isEmpty()) {
+            recordsByRr.remove(key);
+        } else {
+            recordsByRr.put(key, List.copyOf(records));
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package io.annopick.gateway.autodns.mapping;
+
+import io.annopick.gateway.autodns.config.AutoDnsProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Maps Ingress hosts to their internal record, public host and public record using the
+ * {@code autodns.host-mappings} rules. Rules are compiled into a trie keyed by DNS labels
+ * from the TLD down; a suffix may also end inside a label (the {@code -k8s} of
+ * {@code -k8s.jsccb.ltd}), which is checked at the trie node of the remaining labels.
+ * A lookup walks the host's labels once, so its cost depends on the host, not on the
+ * number of rules. The longest matching suffix wins.
+ */
+@Slf4j
+@Component
+public class HostMappingEngine {
+
+    private final Node root = new Node();
+
+    private static final class Node {
+        final Map<String, Node> children = new HashMap<>();
+        // Rules whose label-aligned part ends at this node, longest partial label first
+        final List<Rule> rules = new ArrayList<>();
+    }
+
+    private record Rule(String internalSuffix, String labelTail, String externalSuffix,
+                        String zone, String externalZone, String recordType) {
+    }
+
+    public HostMappingEngine(AutoDnsProperties properties) {
+        List<AutoDnsProperties.HostMappingConfig> mappings = properties.getHostMappings();
+        if (mappings.isEmpty()) {
+            AutoDnsProperties.HostMappingConfig legacy = new AutoDnsProperties.HostMappingConfig();
+            legacy.setInternalSuffix(properties.getHostSuffix());
+            legacy.setExternalSuffix(properties.getExternalDomainSuffix());
+            legacy.setZone(properties.getAliyun().getDomain());
+            mappings = List.of(legacy);
+        }
+        for (AutoDnsProperties.HostMappingConfig mapping : mappings) {
+            add(compile(mapping));
+        }
+        log.info("Compiled {} host mappings", mappings.size());
+    }
+
+    public Optional<MappedHost> match(String host) {
+        if (host == null || host.isEmpty()) {
+            return Optional.empty();
+        }
+        String name = normalize(host);
+        String[] labels = name.split("\\.");
+
+        Rule best = null;
+        Node node = root;
+        // Stop before the first label: a host must keep a non-empty name in front of the suffix
+        for (int i = labels.length - 1; i > 0; i--) {
+            node = node.children.get(labels[i]);
+            if (node == null) {
+                break;
+            }
+            String head = labels[i - 1];
+            for (Rule rule : node.rules) {
+                // Also rejects an empty head (".apps.example.com") for whole-label suffixes
+                if (head.length() > rule.labelTail().length() && head.endsWith(rule.labelTail())) {
+                    best = rule;
+                    break;
+                }
+            }
+        }
+        if (best == null) {
+            return Optional.empty();
+        }
+
+        String prefix = name.substring(0, name.length() - best.internalSuffix().length());
+        String externalHost = prefix + best.externalSuffix();
+        return Optional.of(new MappedHost(
+            name,
+            best.zone(),
+            relativeName(name, best.zone()),
+            best.recordType(),
+            externalHost,
+            best.externalZone(),
+            relativeName(externalHost, best.externalZone())));
+    }
+
+    public boolean isManaged(String host) {
+        return match(host).isPresent();
+    }
+
+    private static Rule compile(AutoDnsProperties.HostMappingConfig mapping) {
+        String internalSuffix = normalize(required(mapping.getInternalSuffix(), "internal-suffix"));
+        String externalSuffix = normalize(required(mapping.getExternalSuffix(), "external-suffix"));
+        String zone = normalize(required(mapping.getZone(), "zone"));
+        String externalZone = mapping.getExternalZone() != null && !mapping.getExternalZone().isBlank()
+            ? normalize(mapping.getExternalZone())
+            : zone;
+        if (!internalSuffix.endsWith("." + zone)) {
+            throw new IllegalStateException("Host mapping suffix " + internalSuffix + " is not inside zone " + zone);
+        }
+        if (!externalSuffix.endsWith("." + externalZone)) {
+            throw new IllegalStateException("Host mapping suffix " + externalSuffix + " is not inside zone " + externalZone);
+        }
+
+        // "-k8s.jsccb.ltd" -> tail "-k8s" + labels [jsccb, ltd]; ".apps.example.com" -> tail "" + labels
+        int dot = internalSuffix.indexOf('.');
+        String labelTail = internalSuffix.substring(0, dot);
+        String recordType = mapping.getRecordType() != null ? mapping.getRecordType().toUpperCase(Locale.ROOT) : "A";
+        return new Rule(internalSuffix, labelTail, externalSuffix, zone, externalZone, recordType);
+    }
+
+    private void add(Rule rule) {
+        String[] labels = rule.internalSuffix().substring(rule.labelTail().length() + 1).split("\\.");
+        Node node = root;
+        for (int i = labels.length - 1; i >= 0; i--) {
+            node = node.children.computeIfAbsent(labels[i], k -> new Node());
+        }
+        for (Rule existing : node.rules) {
+            if (existing.labelTail().equals(rule.labelTail())) {
+                throw new IllegalStateException("Duplicate host mapping for suffix " + rule.internalSuffix());
+            }
+        }
+        node.rules.add(rule);
+        node.rules.sort((a, b) -> Integer.compare(b.labelTail().length(), a.labelTail().length()));
+    }
+
+    private static String relativeName(String name, String zone) {
+        return name.substring(0, name.length() - zone.length() - 1);
+    }
+
+    private static String normalize(String name) {
+        String lower = name.trim().toLowerCase(Locale.ROOT);
+        return lower.endsWith(".") ? lower.substring(0, lower.length() - 1) : lower;
+    }
+
+    private static String required(String value, String name) {
+        if (value == null || value.isBlank()) {
+            throw new IllegalStateException("Host mapping is missing " + name);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,16 @@
+package io.annopick.gateway.autodns.mapping;
+
+/**
+ * Names derived for one managed Ingress host by its {@link HostMappingEngine} rule.
+ *
+ * @param host         internal host, lower case
+ * @param zone         zone of the internal record
+ * @param rr           internal record name relative to {@code zone}
+ * @param recordType   type of the internal records
+ * @param externalHost public host served by APISIX
+ * @param externalZone zone of the public record
+ * @param externalRr   public record name relative to {@code externalZone}
+ */
+public record MappedHost(String host, String zone, String rr, String recordType,
+                         String externalHost, String externalZone, String externalRr) {
+}
@@ -1,12 +1,19 @@
 package io.annopick.gateway.autodns.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.Data;
 import java.time.LocalDateTime;
 
 @Data
 @Entity
-@Table(name = "apisix_operations")
+@Table(name = "apisix_operations", indexes = {
+    @Index(name = "idx_apisix_operations_external_host", columnList = "external_host"),
+    @Index(name = "idx_apisix_operations_status", columnList = "status"),
+    @Index(name = "idx_apisix_operations_created_at", columnList = "created_at"),
+    @Index(name = "idx_apisix_operations_request_hash", columnList = "request_hash"),
+    @Index(name = "idx_apisix_operations_response_hash", columnList = "response_hash")
+})
 public class ApisixOperation {
 
     @Id
@@ -31,6 +38,16 @@ public class ApisixOperation {
     @Column(columnDefinition = "TEXT")
     private String responseBody;
 
+    // Set instead of the body columns in compact audit format, see ApisixAuditStore;
+    // storage detail, not part of the API output
+    @JsonIgnore
+    @Column(length = 64)
+    private String requestHash;
+
+    @JsonIgnore
+    @Column(length = 64)
+    private String responseHash;
+
     @Column(nullable = false, length = 20)
     private String status;
 
@@ -0,0 +1,50 @@
+package io.annopick.gateway.autodns.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import java.time.LocalDateTime;
+
+/**
+ * Content-addressed, deflate-compressed body of an APISIX operation. {@code hash} is the
+ * SHA-256 of the full body; a {@code merge-patch} payload stores only a JSON merge patch
+ * against the payload {@code baseHash}.
+ */
+@Data
+@Entity
+@Table(name = "apisix_payloads", indexes = {
+    @Index(name = "idx_apisix_payloads_base_hash", columnList = "base_hash")
+})
+public class ApisixPayload {
+
+    public static final String FULL = "deflate";
+    public static final String MERGE_PATCH = "merge-patch";
+
+    @Id
+    @Column(length = 64)
+    private String hash;
+
+    @Column(nullable = false, length = 20)
+    private String encoding;
+
+    @Column(length = 64)
+    private String baseHash;
+
+    // Number of patches between this payload and a full one
+    @Column(nullable = false)
+    private Integer depth = 0;
+
+    @Column(nullable = false)
+    private Integer originalSize;
+
+    @Lob
+    @Column(nullable = false, columnDefinition = "MEDIUMBLOB")
+    private byte[] data;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+}
@@ -6,7 +6,12 @@ import java.time.LocalDateTime;
 
 @Data
 @Entity
-@Table(name = "dns_records")
+@Table(name = "dns_records", indexes = {
+    @Index(name = "idx_dns_records_host", columnList = "host"),
+    @Index(name = "idx_dns_records_site", columnList = "site"),
+    // DnsBatchCollector maps RecordIds back by rr on every flush
+    @Index(name = "idx_dns_records_rr", columnList = "rr")
+})
 public class DnsRecord {
 
     @Id
@@ -28,9 +33,20 @@ public class DnsRecord {
     @Column(length = 50)
     private String recordId;
 
+    // Zone of the rr; null on rows created before host mappings, meaning autodns.aliyun.domain
+    @Column(length = 255)
+    private String zone;
+
     @Column(length = 20)
     private String recordType = "A";
 
+    @Column(nullable = false, length = 100, columnDefinition = "VARCHAR(100) NOT NULL DEFAULT 'default'")
+    private String site = "default";
+
+    // Canonical JSON of the Ingress route annotations, see ApisixRouteOptions
+    @Column(columnDefinition = "TEXT")
+    private String routeOptions;
+
     @Column(nullable = false)
     private LocalDateTime createdAt;
 
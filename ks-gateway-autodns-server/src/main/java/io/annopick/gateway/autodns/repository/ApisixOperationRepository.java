@@ -1,11 +1,16 @@
 package io.annopick.gateway.autodns.repository;
 
 import io.annopick.gateway.autodns.model.ApisixOperation;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
 public interface ApisixOperationRepository extends JpaRepository<ApisixOperation, Long> {
@@ -13,4 +18,33 @@ public interface ApisixOperationRepository extends JpaRepository<ApisixOperation
     @Modifying
     @Query("DELETE FROM ApisixOperation a WHERE a.createdAt < :cutoffDate")
     void deleteOlderThan(LocalDateTime cutoffDate);
+
+    /**
+     * Keyset page, newest first: rows with an id below {@code cursor}.
+     */
+    @Query("SELECT a FROM ApisixOperation a WHERE a.id < :cursor" +
+           " AND (:host IS NULL OR a.externalHost = :host)" +
+           " AND (:status IS NULL OR a.status = :status)" +
+           " AND (:from IS NULL OR a.createdAt >= :from)" +
+           " AND (:to IS NULL OR a.createdAt < :to)" +
+           " ORDER BY a.id DESC")
+    List<ApisixOperation> findPage(Long cursor, String host, String status,
+                                   LocalDateTime from, LocalDateTime to, Pageable pageable);
+
+    /**
+     * Oldest-first stream of rows with an id above {@code after}. MySQL Connector/J streams
+     * row by row with a fetch size of Integer.MIN_VALUE; must run inside a transaction.
+     */
+    @QueryHints({
+        @QueryHint(name = "org.hibernate.fetchSize", value = "" + Integer.MIN_VALUE),
+        @QueryHint(name = "org.hibernate.readOnly", value = "true")
+    })
+    @Query("SELECT a FROM ApisixOperation a WHERE a.id > :after" +
+           " AND (:host IS NULL OR a.externalHost = :host)" +
+           " AND (:status IS NULL OR a.status = :status)" +
+           " AND (:from IS NULL OR a.createdAt >= :from)" +
+           " AND (:to IS NULL OR a.createdAt < :to)" +
+           " ORDER BY a.id ASC")
+    Stream<ApisixOperation> streamAfter(Long after, String host, String status,
+                                        LocalDateTime from, LocalDateTime to);
 }
@@ -0,0 +1,24 @@
+package io.annopick.gateway.autodns.repository;
+
+import io.annopick.gateway.autodns.model.ApisixPayload;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ApisixPayloadRepository extends JpaRepository<ApisixPayload, String> {
+
+    /**
+     * Deletes payloads no operation and no other payload refers to. Patch chains
+     * unravel one level per run, which is enough for a daily cleanup.
+     */
+    @Modifying
+    @Query(value = "DELETE p FROM apisix_payloads p" +
+                   " LEFT JOIN apisix_operations req ON req.request_hash = p.hash" +
+                   " LEFT JOIN apisix_operations res ON res.response_hash = p.hash" +
+                   " LEFT JOIN apisix_payloads child ON child.base_hash = p.hash" +
+                   " WHERE req.id IS NULL AND res.id IS NULL AND child.hash IS NULL",
+           nativeQuery = true)
+    int deleteUnreferenced();
+}
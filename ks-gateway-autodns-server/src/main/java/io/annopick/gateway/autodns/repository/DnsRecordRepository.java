@@ -1,12 +1,39 @@
 package io.annopick.gateway.autodns.repository;
 
 import io.annopick.gateway.autodns.model.DnsRecord;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface DnsRecordRepository extends JpaRepository<DnsRecord, Long> {
     Optional<DnsRecord> findByHost(String host);
+    List<DnsRecord> findBySite(String site);
+    List<DnsRecord> findByRr(String rr);
     void deleteByHost(String host);
+
+    /**
+     * Keyset page, newest first: rows with an id below {@code cursor}.
+     */
+    @Query("SELECT d FROM DnsRecord d WHERE d.id < :cursor" +
+           " AND (:host IS NULL OR d.host = :host)" +
+           " AND (:site IS NULL OR d.site = :site)" +
+           " ORDER BY d.id DESC")
+    List<DnsRecord> findPage(Long cursor, String host, String site, Pageable pageable);
+
+    @QueryHints({
+        @QueryHint(name = "org.hibernate.fetchSize", value = "" + Integer.MIN_VALUE),
+        @QueryHint(name = "org.hibernate.readOnly", value = "true")
+    })
+    @Query("SELECT d FROM DnsRecord d WHERE d.id > :after" +
+           " AND (:host IS NULL OR d.host = :host)" +
+           " AND (:site IS NULL OR d.site = :site)" +
+           " ORDER BY d.id ASC")
+    Stream<DnsRecord> streamAfter(Long after, String host, String site);
 }
@@ -5,20 +5,56 @@ import com.aliyun.alidns20150109.models.*;
 
 import com.aliyun.credentials.models.Config;
 import io.annopick.gateway.autodns.config.AutoDnsProperties;
+import io.annopick.gateway.autodns.dns.DnsChange;
+import io.annopick.gateway.autodns.dns.DnsPropagationProbe;
+import io.annopick.gateway.autodns.dns.DnsProvider;
+import io.annopick.gateway.autodns.dns.DnsRecordInfo;
+import io.annopick.gateway.autodns.dns.DnsResult;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * {@link DnsProvider} backed by Alidns. The SDK client is blocking, so calls run on a
+ * bounded pool of {@code autodns.aliyun.max-concurrency} threads. Successful writes are
+ * handed to the {@link DnsPropagationProbe}.
+ */
 @Slf4j
 @Service
-public class AliyunDnsService {
+@ConditionalOnProperty(name = "autodns.dns-provider", havingValue = "aliyun", matchIfMissing = true)
+public class AliyunDnsService implements DnsProvider {
 
     private final Client client;
     private final AutoDnsProperties properties;
+    private final ExecutorService executor;
+    private final DnsPropagationProbe propagationProbe;
 
-    public AliyunDnsService(AutoDnsProperties properties) {
+    public AliyunDnsService(AutoDnsProperties properties, DnsPropagationProbe propagationProbe) {
         this.properties = properties;
+        this.propagationProbe = propagationProbe;
+
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(
+            Math.max(1, properties.getAliyun().getMaxConcurrency()),
+            r -> {
+                Thread t = new Thread(r, "aliyun-dns-" + counter.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+
         try {
             Config config = new Config();
             config.setType("access_key");
@@ -39,80 +75,247 @@ public class AliyunDnsService {
         }
     }
 
-    public String addDomainRecord(String rr, String type, String value) {
-        try {
-            AddDomainRecordRequest request = new AddDomainRecordRequest()
-                .setDomainName(properties.getAliyun().getDomain())
-                .setRR(rr)
-                .setType(type)
-                .setValue(value);
-            
-            AddDomainRecordResponse response = client.addDomainRecord(request);
-            String recordId = response.getBody().getRecordId();
-            log.info("Added DNS record: {} -> {}, RecordId: {}, ResponseCode: {}", rr, value, recordId, response.getStatusCode());
-            return recordId;
-        } catch (Exception e) {
-            log.error("Failed to add DNS record: {} -> {}", rr, value, e);
-            return null;
+    @Override
+    public CompletableFuture<DnsResult> addRecord(String zone, String rr, String type, String value) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                AddDomainRecordRequest request = new AddDomainRecordRequest()
+                    .setDomainName(zone)
+                    .setRR(rr)
+                    .setType(type)
+                    .setValue(value);
+
+                AddDomainRecordResponse response = client.addDomainRecord(request);
+                String recordId = response.getBody().getRecordId();
+                log.info("Added DNS record: {}.{} -> {}, RecordId: {}, ResponseCode: {}", rr, zone, value, recordId, response.getStatusCode());
+                propagationProbe.track(DnsPropagationProbe.ADD, zone, rr, type, value, recordId);
+                return DnsResult.ok(zone, rr, type, value, recordId);
+            } catch (Exception e) {
+                log.error("Failed to add DNS record: {}.{} -> {}", rr, zone, value, e);
+                return DnsResult.failed(zone, rr, type, value, e.getMessage());
+            }
+        }, executor);
+    }
+
+    @Override
+    public CompletableFuture<DnsResult> updateRecord(String recordId, String zone, String rr, String type, String value) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                UpdateDomainRecordRequest request = new UpdateDomainRecordRequest()
+                    .setRecordId(recordId)
+                    .setRR(rr)
+                    .setType(type)
+                    .setValue(value);
+
+                UpdateDomainRecordResponse response = client.updateDomainRecord(request);
+                log.info("Updated DNS record: {} -> {}, RecordId: {}, ResponseCode: {}",
+                        rr, value, recordId, response.getStatusCode());
+                propagationProbe.track(DnsPropagationProbe.UPDATE, zone, rr, type, value, recordId);
+                return DnsResult.ok(zone, rr, type, value, recordId);
+            } catch (Exception e) {
+                log.error("Failed to update DNS record: {} -> {}, RecordId: {}", rr, value, recordId, e);
+                return DnsResult.failed(zone, rr, type, value, e.getMessage());
+            }
+        }, executor);
+    }
+
+    @Override
+    public CompletableFuture<DnsResult> deleteRecord(String recordId) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                DeleteDomainRecordRequest request = new DeleteDomainRecordRequest()
+                    .setRecordId(recordId);
+
+                DeleteDomainRecordResponse response = client.deleteDomainRecord(request);
+                log.info("Deleted DNS record, RecordId: {}, RequestId:{}, ResponseCode: {}",
+                        recordId,
+                        response.getBody().getRequestId(),
+                        response.getStatusCode());
+                return DnsResult.ok(null, null, null, null, recordId);
+            } catch (Exception e) {
+                log.error("Failed to delete DNS record, RecordId: {}", recordId, e);
+                return DnsResult.failed(null, null, null, null, e.getMessage());
+            }
+        }, executor);
+    }
+
+    @Override
+    public CompletableFuture<Optional<DnsRecordInfo>> queryRecord(String zone, String rr) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                DescribeDomainRecordsRequest request = new DescribeDomainRecordsRequest()
+                    .setDomainName(zone)
+                    .setRRKeyWord(rr);
+
+                DescribeDomainRecordsResponse response = client.describeDomainRecords(request);
+                List<DescribeDomainRecordsResponseBody.DescribeDomainRecordsResponseBodyDomainRecordsRecord> records =
+                    response.getBody().getDomainRecords().getRecord();
+
+                if (records != null && !records.isEmpty()) {
+                    for (DescribeDomainRecordsResponseBody.DescribeDomainRecordsResponseBodyDomainRecordsRecord record : records) {
+                        if (record.getRR().equals(rr)) {
+                            return Optional.of(new DnsRecordInfo(record.getRecordId(), zone, record.getRR(), record.getType(), record.getValue()));
+                        }
+                    }
+                }
+                return Optional.<DnsRecordInfo>empty();
+            } catch (Exception e) {
+                log.error("Failed to query DNS record: {}.{}", rr, zone, e);
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    @Override
+    public CompletableFuture<List<DnsResult>> applyBatch(List<DnsChange> changes) {
+        return CompletableFuture.supplyAsync(() -> applyBatchBlocking(changes), executor);
+    }
+
+    /**
+     * Applies many record changes through OperateBatchDomain. Changes are grouped by
+     * operation (RR_ADD, RR_DEL) and split into tasks of at most {@code batchSize} records;
+     * every task is polled until it finishes and its per-record details are mapped back
+     * onto the submitted changes. The returned list is in the order of {@code changes}.
+     */
+    private List<DnsResult> applyBatchBlocking(List<DnsChange> changes) {
+        Map<DnsChange, DnsResult> results = new HashMap<>();
+        Map<String, List<DnsChange>> byOperation = new LinkedHashMap<>();
+        for (DnsChange change : changes) {
+            byOperation.computeIfAbsent(change.getOperation(), k -> new ArrayList<>()).add(change);
+        }
+
+        // Adds go first so that a rotation (add new value, delete old value) never leaves the RR empty.
+        // DnsBatchCollector never puts a delete and an add it would remove into the same batch.
+        for (String operation : List.of(DnsChange.ADD, DnsChange.DELETE)) {
+            List<DnsChange> operationChanges = byOperation.getOrDefault(operation, List.of());
+            int batchSize = Math.max(1, properties.getAliyun().getBatchSize());
+            for (int i = 0; i < operationChanges.size(); i += batchSize) {
+                List<DnsChange> chunk = operationChanges.subList(i, Math.min(i + batchSize, operationChanges.size()));
+                results.putAll(submitBatch(operation, chunk));
+            }
         }
+
+        List<DnsResult> ordered = new ArrayList<>(changes.size());
+        for (DnsChange change : changes) {
+            DnsResult result = results.get(change);
+            ordered.add(result);
+            if (result != null && result.isSuccess()) {
+                propagationProbe.track(DnsChange.ADD.equals(change.getOperation()) ? DnsPropagationProbe.ADD : DnsPropagationProbe.DELETE,
+                    change.getZone(), change.getRr(), change.getType(), change.getValue(), result.getRecordId());
+            }
+        }
+        return ordered;
     }
 
-    public boolean updateDomainRecord(String recordId, String rr, String type, String value) {
+    private Map<DnsChange, DnsResult> submitBatch(String operation, List<DnsChange> chunk) {
+        Map<DnsChange, DnsResult> results = new HashMap<>();
         try {
-            UpdateDomainRecordRequest request = new UpdateDomainRecordRequest()
-                .setRecordId(recordId)
-                .setRR(rr)
-                .setType(type)
-                .setValue(value);
-
-            UpdateDomainRecordResponse response =  client.updateDomainRecord(request);
-            log.info("Updated DNS record: {} -> {}, RecordId: {}, ResponseCode: {}",
-                    rr, value, recordId, response.getStatusCode());
-            return true;
+            List<OperateBatchDomainRequest.OperateBatchDomainRequestDomainRecordInfo> infos = new ArrayList<>();
+            for (DnsChange change : chunk) {
+                OperateBatchDomainRequest.OperateBatchDomainRequestDomainRecordInfo info =
+                    new OperateBatchDomainRequest.OperateBatchDomainRequestDomainRecordInfo()
+                        .setDomain(change.getZone())
+                        .setRr(change.getRr())
+                        .setType(change.getType())
+                        .setValue(change.getValue());
+                infos.add(info);
+            }
+
+            OperateBatchDomainRequest request = new OperateBatchDomainRequest()
+                .setType(operation)
+                .setDomainRecordInfo(infos);
+            Long taskId = client.operateBatchDomain(request).getBody().getTaskId();
+            log.info("Submitted DNS batch task {}: {} x {}", taskId, operation, chunk.size());
+
+            awaitBatchTask(taskId, operation);
+            List<DescribeBatchResultDetailResponseBody.DescribeBatchResultDetailResponseBodyBatchResultDetailsBatchResultDetail> details =
+                fetchBatchDetails(taskId, operation);
+
+            Map<String, DnsResult> detailsByKey = new HashMap<>();
+            // zone|rr -> a result for value-less deletes, which remove every record of the RR
+            Map<String, DnsResult> rrWideByKey = new HashMap<>();
+            for (var detail : details) {
+                DnsResult result = new DnsResult(detail.getDomain(), detail.getRr(), detail.getType(), detail.getValue(),
+                    Boolean.TRUE.equals(detail.getStatus()), detail.getRecordId(), detail.getReason());
+                detailsByKey.put(resultKey(detail.getDomain(), detail.getRr(), detail.getValue()), result);
+                // Any failed record fails the RR-wide delete
+                rrWideByKey.merge(resultKey(detail.getDomain(), detail.getRr(), null), result,
+                    (first, next) -> first.isSuccess() ? next : first);
+            }
+
+            for (DnsChange change : chunk) {
+                String key = resultKey(change.getZone(), change.getRr(), change.getValue());
+                DnsResult result = change.getValue() != null ? detailsByKey.get(key) : rrWideByKey.get(key);
+                if (result == null) {
+                    result = DnsResult.failed(change, "No batch result in task " + taskId);
+                }
+                results.put(change, result);
+            }
+
+            long failed = results.values().stream().filter(r -> !r.isSuccess()).count();
+            log.info("DNS batch task {} finished: {} succeeded, {} failed", taskId, chunk.size() - failed, failed);
         } catch (Exception e) {
-            log.error("Failed to update DNS record: {} -> {}, RecordId: {}", rr, value, recordId, e);
-            return false;
+            log.error("Failed to run DNS batch: {} x {}", operation, chunk.size(), e);
+            for (DnsChange change : chunk) {
+                results.put(change, DnsResult.failed(change, e.getMessage()));
+            }
         }
+        return results;
     }
 
-    public boolean deleteDomainRecord(String recordId) {
-        try {
-            DeleteDomainRecordRequest request = new DeleteDomainRecordRequest()
-                .setRecordId(recordId);
-
-            DeleteDomainRecordResponse response = client.deleteDomainRecord(request);
-            log.info("Deleted DNS record, RecordId: {}, RequestId:{}, ResponseCode: {}",
-                    recordId,
-                    response.getBody().getRequestId(),
-                    response.getStatusCode());
-            return true;
-        } catch (Exception e) {
-            log.error("Failed to delete DNS record, RecordId: {}", recordId, e);
-            return false;
+    private void awaitBatchTask(Long taskId, String operation) throws Exception {
+        long deadline = System.currentTimeMillis() + properties.getAliyun().getBatchTimeoutSeconds() * 1000L;
+        long pollInterval = Math.max(100, properties.getAliyun().getBatchPollIntervalMillis());
+        while (true) {
+            DescribeBatchResultCountRequest request = new DescribeBatchResultCountRequest()
+                .setTaskId(taskId)
+                .setBatchType(operation);
+            Integer status = client.describeBatchResultCount(request).getBody().getStatus();
+            // -1: no task, 0: running, 1: finished
+            if (status != null && status == 1) {
+                return;
+            }
+            if (status == null || status != 0) {
+                throw new IllegalStateException("DNS batch task " + taskId + " has status " + status);
+            }
+            if (System.currentTimeMillis() + pollInterval > deadline) {
+                throw new IllegalStateException("DNS batch task " + taskId + " did not finish in time");
+            }
+            Thread.sleep(pollInterval);
+            pollInterval = Math.min(pollInterval * 2, 10_000);
         }
     }
 
-    public DescribeDomainRecordsResponseBody.DescribeDomainRecordsResponseBodyDomainRecordsRecord queryDomainRecord(String rr) {
-        try {
-            DescribeDomainRecordsRequest request = new DescribeDomainRecordsRequest()
-                .setDomainName(properties.getAliyun().getDomain())
-                .setRRKeyWord(rr);
-            
-            DescribeDomainRecordsResponse response = client.describeDomainRecords(request);
-            List<DescribeDomainRecordsResponseBody.DescribeDomainRecordsResponseBodyDomainRecordsRecord> records = 
-                response.getBody().getDomainRecords().getRecord();
-            
-            if (records != null && !records.isEmpty()) {
-                for (DescribeDomainRecordsResponseBody.DescribeDomainRecordsResponseBodyDomainRecordsRecord record : records) {
-                    if (record.getRR().equals(rr)) {
-                        return record;
-                    }
-                }
+    private List<DescribeBatchResultDetailResponseBody.DescribeBatchResultDetailResponseBodyBatchResultDetailsBatchResultDetail> fetchBatchDetails(
+            Long taskId, String operation) throws Exception {
+        List<DescribeBatchResultDetailResponseBody.DescribeBatchResultDetailResponseBodyBatchResultDetailsBatchResultDetail> details = new ArrayList<>();
+        long pageSize = 100;
+        for (long page = 1; ; page++) {
+            DescribeBatchResultDetailRequest request = new DescribeBatchResultDetailRequest()
+                .setTaskId(taskId)
+                .setBatchType(operation)
+                .setPageNumber(page)
+                .setPageSize(pageSize);
+            DescribeBatchResultDetailResponseBody body = client.describeBatchResultDetail(request).getBody();
+            var pageDetails = body.getBatchResultDetails() != null
+                ? body.getBatchResultDetails().getBatchResultDetail()
+                : null;
+            if (pageDetails == null || pageDetails.isEmpty()) {
+                return details;
+            }
+            details.addAll(pageDetails);
+            if (pageDetails.size() < pageSize) {
+                return details;
             }
-            return null;
-        } catch (Exception e) {
-            log.error("Failed to query DNS record: {}", rr, e);
-            return null;
         }
     }
+
+    private static String resultKey(String zone, String rr, String value) {
+        return (zone != null ? zone.toLowerCase() : "") + "|" + rr + "|" + (value != null ? value.toLowerCase() : "");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
 }
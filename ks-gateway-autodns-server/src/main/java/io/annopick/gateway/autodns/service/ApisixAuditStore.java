@@ -0,0 +1,339 @@
+package io.annopick.gateway.autodns.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.annopick.gateway.autodns.config.AutoDnsProperties;
+import io.annopick.gateway.autodns.model.ApisixOperation;
+import io.annopick.gateway.autodns.model.ApisixPayload;
+import io.annopick.gateway.autodns.repository.ApisixOperationRepository;
+import io.annopick.gateway.autodns.repository.ApisixPayloadRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterOutputStream;
+
+/**
+ * Writes and reads {@link ApisixOperation} rows in the compact audit format. Bodies are
+ * stored once per SHA-256 in {@code apisix_payloads}, deflate-compressed; a route document
+ * that differs from the previous one of the same route is stored as a JSON merge patch.
+ * {@link #resolveBodies} restores the original text, so readers see the plain format.
+ */
+@Slf4j
+@Service
+public class ApisixAuditStore {
+
+    private static final int BODY_CACHE_SIZE = 256;
+    private static final int DEPTH_CACHE_SIZE = 4096;
+
+    private final ApisixOperationRepository operationRepository;
+    private final ApisixPayloadRepository payloadRepository;
+    private final AutoDnsProperties properties;
+    private final TransactionTemplate writeTransaction;
+    // Own connection, so bodies can be loaded while a streaming export holds the current one
+    private final TransactionTemplate lookupTransaction;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    // externalHost -> hash of the last route document written for it, the next diff base
+    private final Map<String, String> lastRequestHash = new ConcurrentHashMap<>();
+    // hash -> patch depth of payloads known to be stored
+    private final Map<String, Integer> knownDepths = lruMap(DEPTH_CACHE_SIZE);
+    private final Map<String, String> bodyCache = lruMap(BODY_CACHE_SIZE);
+
+    public ApisixAuditStore(ApisixOperationRepository operationRepository,
+                            ApisixPayloadRepository payloadRepository,
+                            AutoDnsProperties properties,
+                            PlatformTransactionManager transactionManager) {
+        this.operationRepository = operationRepository;
+        this.payloadRepository = payloadRepository;
+        this.properties = properties;
+        this.writeTransaction = new TransactionTemplate(transactionManager);
+        this.lookupTransaction = new TransactionTemplate(transactionManager);
+        this.lookupTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.lookupTransaction.setReadOnly(true);
+    }
+
+    /**
+     * Saves the operation; in compact format its bodies are moved to apisix_payloads
+     * in the same transaction.
+     */
+    public synchronized void save(ApisixOperation op) {
+        AutoDnsProperties.DatabaseConfig config = properties.getDatabase();
+        if (!"compact".equalsIgnoreCase(config.getAuditFormat())) {
+            operationRepository.save(op);
+            return;
+        }
+
+        Map<String, Integer> written = new HashMap<>();
+        writeTransaction.executeWithoutResult(tx -> {
+            if (shouldCompact(op.getRequestBody())) {
+                String base = config.isAuditDiffEnabled() ? lastRequestHash.get(op.getExternalHost()) : null;
+                op.setRequestHash(storePayload(op.getRequestBody(), base, written));
+                op.setRequestBody(null);
+            }
+            if (shouldCompact(op.getResponseBody())) {
+                op.setResponseHash(storePayload(op.getResponseBody(), null, written));
+                op.setResponseBody(null);
+            }
+            operationRepository.save(op);
+        });
+
+        // Only remember what was committed
+        knownDepths.putAll(written);
+        if (op.getRequestHash() != null) {
+            lastRequestHash.put(op.getExternalHost(), op.getRequestHash());
+        }
+    }
+
+    /**
+     * Fills requestBody/responseBody of a compact row from its payloads. Callers must not
+     * flush the entity afterwards (detach it or read in a read-only transaction).
+     */
+    public void resolveBodies(ApisixOperation op) {
+        if (op.getRequestBody() == null && op.getRequestHash() != null) {
+            op.setRequestBody(load(op.getRequestHash()));
+        }
+        if (op.getResponseBody() == null && op.getResponseHash() != null) {
+            op.setResponseBody(load(op.getResponseHash()));
+        }
+    }
+
+    /**
+     * Deletes operations older than {@code cutoff} and the payloads no longer referenced.
+     * Holds the same lock as {@link #save}, and the caches are cleared only after the
+     * deletes committed, so no save can reference or diff against a payload being deleted.
+     *
+     * @return number of payloads deleted
+     */
+    public synchronized int deleteOlderThan(LocalDateTime cutoff) {
+        Integer payloads = writeTransaction.execute(tx -> {
+            operationRepository.deleteOlderThan(cutoff);
+            return payloadRepository.deleteUnreferenced();
+        });
+        knownDepths.clear();
+        lastRequestHash.clear();
+        bodyCache.clear();
+        return payloads != null ? payloads : 0;
+    }
+
+    private boolean shouldCompact(String body) {
+        return body != null && body.length() >= properties.getDatabase().getAuditInlineThreshold();
+    }
+
+    private String storePayload(String body, String baseHash, Map<String, Integer> written) {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        String hash = sha256Hex(bytes);
+        if (depthOf(hash, written) != null) {
+            return hash;
+        }
+
+        ApisixPayload payload = new ApisixPayload();
+        payload.setHash(hash);
+        payload.setOriginalSize(bytes.length);
+        payload.setEncoding(ApisixPayload.FULL);
+        payload.setDepth(0);
+        payload.setData(deflate(bytes));
+
+        Integer baseDepth = baseHash != null ? depthOf(baseHash, written) : null;
+        if (baseDepth != null && baseDepth < properties.getDatabase().getAuditMaxPatchChain()) {
+            byte[] patch = createPatch(baseHash, body);
+            if (patch != null) {
+                byte[] compressedPatch = deflate(patch);
+                if (compressedPatch.length < payload.getData().length) {
+                    payload.setEncoding(ApisixPayload.MERGE_PATCH);
+                    payload.setBaseHash(baseHash);
+                    payload.setDepth(baseDepth + 1);
+                    payload.setData(compressedPatch);
+                }
+            }
+        }
+
+        payloadRepository.save(payload);
+        written.put(hash, payload.getDepth());
+        bodyCache.put(hash, body);
+        return hash;
+    }
+
+    private Integer depthOf(String hash, Map<String, Integer> written) {
+        Integer depth = written.get(hash);
+        if (depth == null) {
+            depth = knownDepths.get(hash);
+        }
+        if (depth == null) {
+            depth = payloadRepository.findById(hash).map(ApisixPayload::getDepth).orElse(null);
+            if (depth != null) {
+                knownDepths.put(hash, depth);
+            }
+        }
+        return depth;
+    }
+
+    /**
+     * Merge patch turning the base document into {@code body}, or null when the documents
+     * are not JSON objects or the patch would not reproduce {@code body} byte for byte.
+     */
+    private byte[] createPatch(String baseHash, String body) {
+        String base = load(baseHash);
+        if (base == null) {
+            return null;
+        }
+        try {
+            JsonNode source = objectMapper.readTree(base);
+            JsonNode target = objectMapper.readTree(body);
+            if (!source.isObject() || !target.isObject()) {
+                return null;
+            }
+            JsonNode patch = createMergePatch(source, target);
+            if (!objectMapper.writeValueAsString(applyMergePatch(source, patch)).equals(body)) {
+                return null;
+            }
+            return objectMapper.writeValueAsBytes(patch);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private String load(String hash) {
+        String cached = bodyCache.get(hash);
+        if (cached != null) {
+            return cached;
+        }
+        try {
+            String body = lookupTransaction.execute(tx -> loadChain(hash));
+            if (body != null) {
+                bodyCache.put(hash, body);
+            }
+            return body;
+        } catch (Exception e) {
+            log.error("Failed to load APISIX payload {}", hash, e);
+            return null;
+        }
+    }
+
+    private String loadChain(String hash) {
+        // Walk back to a full or cached body, then apply the patches in order
+        Deque<ApisixPayload> patches = new ArrayDeque<>();
+        String current = hash;
+        String body = null;
+        while (body == null) {
+            ApisixPayload payload = payloadRepository.findById(current).orElse(null);
+            if (payload == null) {
+                log.warn("APISIX payload {} is missing, referenced via {}", current, hash);
+                return null;
+            }
+            if (ApisixPayload.FULL.equals(payload.getEncoding())) {
+                body = new String(inflate(payload.getData()), StandardCharsets.UTF_8);
+            } else {
+                patches.push(payload);
+                current = payload.getBaseHash();
+                body = bodyCache.get(current);
+            }
+        }
+
+        try {
+            while (!patches.isEmpty()) {
+                ApisixPayload payload = patches.pop();
+                JsonNode patch = objectMapper.readTree(inflate(payload.getData()));
+                body = objectMapper.writeValueAsString(applyMergePatch(objectMapper.readTree(body), patch));
+                bodyCache.put(payload.getHash(), body);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return body;
+    }
+
+    // RFC 7386 JSON merge patch; arrays are replaced as a whole
+    static JsonNode createMergePatch(JsonNode source, JsonNode target) {
+        if (source == null || !source.isObject() || !target.isObject()) {
+            return target;
+        }
+        ObjectNode patch = JsonNodeFactory.instance.objectNode();
+        source.fieldNames().forEachRemaining(name -> {
+            if (!target.has(name)) {
+                patch.putNull(name);
+            }
+        });
+        target.fields().forEachRemaining(field -> {
+            JsonNode old = source.get(field.getKey());
+            if (old == null || !old.equals(field.getValue())) {
+                patch.set(field.getKey(), createMergePatch(old, field.getValue()));
+            }
+        });
+        return patch;
+    }
+
+    static JsonNode applyMergePatch(JsonNode target, JsonNode patch) {
+        if (!patch.isObject()) {
+            return patch;
+        }
+        ObjectNode result = target != null && target.isObject()
+            ? ((ObjectNode) target).deepCopy()
+            : JsonNodeFactory.instance.objectNode();
+        patch.fields().forEachRemaining(field -> {
+            if (field.getValue().isNull()) {
+                result.remove(field.getKey());
+            } else {
+                result.set(field.getKey(), applyMergePatch(result.get(field.getKey()), field.getValue()));
+            }
+        });
+        return result;
+    }
+
+    private static byte[] deflate(byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, data.length / 4));
+        try (DeflaterOutputStream deflater = new DeflaterOutputStream(out)) {
+            deflater.write(data);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] inflate(byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+        try (InflaterOutputStream inflater = new InflaterOutputStream(out)) {
+            inflater.write(data);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static String sha256Hex(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static <K, V> Map<K, V> lruMap(int maxSize) {
+        return Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > maxSize;
+            }
+        });
+    }
+}
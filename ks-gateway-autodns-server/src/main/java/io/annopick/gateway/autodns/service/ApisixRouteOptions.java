@@ -0,0 +1,126 @@
+package io.annopick.gateway.autodns.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-Ingress route tuning read from annotations, e.g. with the default prefix:
+ * <pre>
+ * autodns.annopick.io/proxy-cache: "true"
+ * autodns.annopick.io/proxy-cache-paths: "^/static/,^/assets/"
+ * autodns.annopick.io/compression: "gzip,brotli"
+ * autodns.annopick.io/limit-req-rate: "100"
+ * autodns.annopick.io/limit-req-burst: "50"
+ * autodns.annopick.io/limit-conn: "200"
+ * autodns.annopick.io/upstream-read-timeout: "120"
+ * </pre>
+ */
+@Slf4j
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ApisixRouteOptions {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private Boolean proxyCache;
+    private String proxyCacheZone;
+    // URI regexes; when empty every GET/HEAD response is cacheable
+    private List<String> proxyCachePaths;
+    // gzip and/or brotli
+    private List<String> compression;
+    private Integer limitReqRate;
+    private Integer limitReqBurst;
+    private Integer limitConn;
+    private Integer limitConnBurst;
+    private Integer upstreamConnectTimeout;
+    private Integer upstreamSendTimeout;
+    private Integer upstreamReadTimeout;
+
+    public static ApisixRouteOptions fromAnnotations(Map<String, String> annotations, String prefix) {
+        ApisixRouteOptions options = new ApisixRouteOptions();
+        if (annotations == null) {
+            return options;
+        }
+
+        String proxyCache = annotations.get(prefix + "proxy-cache");
+        if (proxyCache != null) {
+            options.setProxyCache(Boolean.parseBoolean(proxyCache.trim()));
+        }
+        options.setProxyCacheZone(trimToNull(annotations.get(prefix + "proxy-cache-zone")));
+        options.setProxyCachePaths(splitList(annotations.get(prefix + "proxy-cache-paths")));
+        List<String> compression = splitList(annotations.get(prefix + "compression"));
+        if (compression != null) {
+            options.setCompression(compression.stream()
+                .map(String::toLowerCase)
+                .filter(c -> "gzip".equals(c) || "brotli".equals(c))
+                .distinct()
+                .toList());
+        }
+        options.setLimitReqRate(parsePositive(annotations, prefix + "limit-req-rate"));
+        options.setLimitReqBurst(parsePositive(annotations, prefix + "limit-req-burst"));
+        options.setLimitConn(parsePositive(annotations, prefix + "limit-conn"));
+        options.setLimitConnBurst(parsePositive(annotations, prefix + "limit-conn-burst"));
+        options.setUpstreamConnectTimeout(parsePositive(annotations, prefix + "upstream-connect-timeout"));
+        options.setUpstreamSendTimeout(parsePositive(annotations, prefix + "upstream-send-timeout"));
+        options.setUpstreamReadTimeout(parsePositive(annotations, prefix + "upstream-read-timeout"));
+        return options;
+    }
+
+    /**
+     * Canonical form stored in dns_records.route_options; null when no option is set.
+     */
+    public String toJson() {
+        try {
+            String json = MAPPER.writeValueAsString(this);
+            return "{}".equals(json) ? null : json;
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to serialize route options", e);
+        }
+    }
+
+    public static ApisixRouteOptions fromJson(String json) {
+        if (json == null || json.isBlank()) {
+            return new ApisixRouteOptions();
+        }
+        try {
+            return MAPPER.readValue(json, ApisixRouteOptions.class);
+        } catch (Exception e) {
+            log.warn("Ignoring unreadable route options: {}", json, e);
+            return new ApisixRouteOptions();
+        }
+    }
+
+    private static Integer parsePositive(Map<String, String> annotations, String key) {
+        String value = trimToNull(annotations.get(key));
+        if (value == null) {
+            return null;
+        }
+        try {
+            int parsed = Integer.parseInt(value);
+            if (parsed > 0) {
+                return parsed;
+            }
+        } catch (NumberFormatException ignored) {
+            // fall through to the warning below
+        }
+        log.warn("Ignoring annotation {}={}, expected a positive integer", key, value);
+        return null;
+    }
+
+    private static List<String> splitList(String value) {
+        if (trimToNull(value) == null) {
+            return null;
+        }
+        return Arrays.stream(value.split(",")).map(String::trim).filter(s -> !s.isEmpty()).toList();
+    }
+
+    private static String trimToNull(String value) {
+        return value == null || value.isBlank() ? null : value.trim();
+    }
+}
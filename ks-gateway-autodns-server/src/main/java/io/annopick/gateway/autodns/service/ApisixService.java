@@ -2,31 +2,81 @@ package io.annopick.gateway.autodns.service;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.annopick.gateway.autodns.config.AutoDnsProperties;
+import io.annopick.gateway.autodns.mapping.HostMappingEngine;
+import io.annopick.gateway.autodns.mapping.MappedHost;
 import io.annopick.gateway.autodns.model.ApisixOperation;
-import io.annopick.gateway.autodns.repository.ApisixOperationRepository;
+import io.annopick.gateway.autodns.model.DnsRecord;
+import io.annopick.gateway.autodns.repository.DnsRecordRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class ApisixService {
 
+    private static final List<String> COMPRESSIBLE_TYPES = List.of(
+        "text/html", "text/css", "text/plain", "text/xml", "text/javascript",
+        "application/javascript", "application/json", "application/xml", "image/svg+xml");
+
     private final AutoDnsProperties properties;
-    private final ApisixOperationRepository operationRepository;
+    private final ApisixAuditStore auditStore;
+    private final DnsRecordRepository dnsRecordRepository;
+    private final ApisixStandaloneRenderer standaloneRenderer;
+    private final HostMappingEngine hostMappingEngine;
     private final RestTemplate restTemplate = new RestTemplate();
     private final ObjectMapper objectMapper = new ObjectMapper();
 
-    public void addRoute(String externalHost, String upstreamHost, Integer nodePort) {
+    /**
+     * In standalone mode the route set is seeded from dns_records, so the first rendered
+     * document is complete instead of growing with the informer's initial ADD events.
+     * Runs once the context is up, before the Ingress watcher starts, so refresh (and
+     * the CDS training run) never touches the database.
+     */
+    @EventListener(ApplicationStartedEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void seedStandaloneRoutes() {
+        if (!isStandalone()) {
+            return;
+        }
+        List<DnsRecord> records = dnsRecordRepository.findAll();
+        for (DnsRecord record : records) {
+            MappedHost mapped = hostMappingEngine.match(record.getHost()).orElse(null);
+            if (mapped == null) {
+                log.warn("No host mapping matches {}, not seeding its APISIX route", record.getHost());
+                continue;
+            }
+            String externalHost = mapped.externalHost();
+            standaloneRenderer.putRoute(routeId(externalHost),
+                buildRouteConfig(externalHost, record.getHost(), record.getNodePort(), splitIps(record.getIpAddresses()),
+                    ApisixRouteOptions.fromJson(record.getRouteOptions())));
+        }
+        log.info("Seeded {} APISIX standalone routes from database", records.size());
+    }
+
+    public void addRoute(String externalHost, String upstreamHost, Integer nodePort, List<String> nodeIps,
+                         ApisixRouteOptions options) {
+        if (isStandalone()) {
+            standaloneRenderer.putRoute(routeId(externalHost), buildRouteConfig(externalHost, upstreamHost, nodePort, nodeIps, options));
+            return;
+        }
         try {
-            String routeId = externalHost.replace(".", "-");
-            Map<String, Object> route = buildRouteConfig(externalHost, upstreamHost, nodePort);
+            String routeId = routeId(externalHost);
+            Map<String, Object> route = buildRouteConfig(externalHost, upstreamHost, nodePort, nodeIps, options);
             String requestBody = objectMapper.writeValueAsString(route);
 
             HttpHeaders headers = new HttpHeaders();
@@ -46,13 +96,18 @@ public class ApisixService {
         }
     }
 
-    public void updateRoute(String externalHost, String upstreamHost, Integer nodePort) {
-        addRoute(externalHost, upstreamHost, nodePort);
+    public void updateRoute(String externalHost, String upstreamHost, Integer nodePort, List<String> nodeIps,
+                            ApisixRouteOptions options) {
+        addRoute(externalHost, upstreamHost, nodePort, nodeIps, options);
     }
 
     public void deleteRoute(String externalHost) {
+        if (isStandalone()) {
+            standaloneRenderer.removeRoute(routeId(externalHost));
+            return;
+        }
         try {
-            String routeId = externalHost.replace(".", "-");
+            String routeId = routeId(externalHost);
             HttpHeaders headers = new HttpHeaders();
             headers.set("X-API-KEY", properties.getApisix().getAdminKey());
 
@@ -69,7 +124,23 @@ public class ApisixService {
         }
     }
 
-    private Map<String, Object> buildRouteConfig(String externalHost, String upstreamHost, Integer nodePort) {
+    private boolean isStandalone() {
+        return "standalone".equalsIgnoreCase(properties.getApisix().getMode());
+    }
+
+    private static String routeId(String externalHost) {
+        return externalHost.replace(".", "-");
+    }
+
+    private static List<String> splitIps(String ipAddresses) {
+        if (ipAddresses == null || ipAddresses.isBlank()) {
+            return List.of();
+        }
+        return Arrays.stream(ipAddresses.split(",")).map(String::trim).filter(ip -> !ip.isEmpty()).toList();
+    }
+
+    private Map<String, Object> buildRouteConfig(String externalHost, String upstreamHost, Integer nodePort,
+                                                 List<String> nodeIps, ApisixRouteOptions options) {
         Map<String, Object> route = new HashMap<>();
         route.put("uri", "/*");
         route.put("host", externalHost);
@@ -81,9 +152,41 @@ public class ApisixService {
         upstream.put("pass_host", "rewrite");
         upstream.put("upstream_host", upstreamHost);
 
-        Map<String, Object> nodes = new HashMap<>();
-        nodes.put(upstreamHost + ":" + nodePort, 1);
-        upstream.put("nodes", nodes);
+        AutoDnsProperties.UpstreamConfig upstreamConfig = properties.getApisix().getUpstream();
+        if ("node-ip".equalsIgnoreCase(upstreamConfig.getNodeMode()) && nodeIps != null && !nodeIps.isEmpty()) {
+            // Node InternalIPs directly: no DNS hop in APISIX, load spread across nodes,
+            // and dead nodes are taken out of rotation by the health checks
+            List<Map<String, Object>> nodes = new ArrayList<>();
+            for (String ip : nodeIps) {
+                Map<String, Object> node = new HashMap<>();
+                node.put("host", ip.contains(":") ? "[" + ip + "]" : ip);
+                node.put("port", nodePort);
+                node.put("weight", upstreamConfig.getNodeWeight());
+                nodes.add(node);
+            }
+            upstream.put("nodes", nodes);
+            upstream.put("retries", Math.min(upstreamConfig.getRetries(), nodeIps.size() - 1));
+            if (upstreamConfig.isHealthCheckEnabled()) {
+                upstream.put("checks", buildHealthChecks(upstreamHost, upstreamConfig));
+            }
+
+            Map<String, Object> keepalivePool = new HashMap<>();
+            keepalivePool.put("size", upstreamConfig.getKeepaliveSize());
+            keepalivePool.put("idle_timeout", upstreamConfig.getKeepaliveIdleTimeoutSeconds());
+            keepalivePool.put("requests", upstreamConfig.getKeepaliveRequests());
+            upstream.put("keepalive_pool", keepalivePool);
+
+            // Short connect timeout so a dead node fails over quickly
+            upstream.put("timeout", buildTimeout(upstreamConfig, options));
+        } else {
+            Map<String, Object> nodes = new HashMap<>();
+            nodes.put(upstreamHost + ":" + nodePort, 1);
+            upstream.put("nodes", nodes);
+            if (options.getUpstreamConnectTimeout() != null || options.getUpstreamSendTimeout() != null
+                    || options.getUpstreamReadTimeout() != null) {
+                upstream.put("timeout", buildTimeout(upstreamConfig, options));
+            }
+        }
 
         route.put("upstream", upstream);
 
@@ -93,11 +196,116 @@ public class ApisixService {
         realIp.put("source", "http_x_forwarded_for");
         realIp.put("trusted_addresses", new String[]{"0.0.0.0/0", "::/0"});
         plugins.put("real-ip", realIp);
+        addAnnotatedPlugins(plugins, options);
         route.put("plugins", plugins);
 
         return route;
     }
 
+    private static Map<String, Object> buildTimeout(AutoDnsProperties.UpstreamConfig config, ApisixRouteOptions options) {
+        Map<String, Object> timeout = new HashMap<>();
+        timeout.put("connect", Objects.requireNonNullElse(options.getUpstreamConnectTimeout(), config.getConnectTimeoutSeconds()));
+        timeout.put("send", Objects.requireNonNullElse(options.getUpstreamSendTimeout(), config.getSendTimeoutSeconds()));
+        timeout.put("read", Objects.requireNonNullElse(options.getUpstreamReadTimeout(), config.getReadTimeoutSeconds()));
+        return timeout;
+    }
+
+    private void addAnnotatedPlugins(Map<String, Object> plugins, ApisixRouteOptions options) {
+        if (Boolean.TRUE.equals(options.getProxyCache())) {
+            Map<String, Object> proxyCache = new HashMap<>();
+            proxyCache.put("cache_zone", Objects.requireNonNullElse(options.getProxyCacheZone(),
+                properties.getApisix().getProxyCacheZone()));
+            proxyCache.put("cache_strategy", "disk");
+            proxyCache.put("cache_method", List.of("GET", "HEAD"));
+            proxyCache.put("cache_http_status", List.of(200, 301, 404));
+            if (options.getProxyCachePaths() != null && !options.getProxyCachePaths().isEmpty()) {
+                // Plugin filter: only URIs matching one of the path regexes go through the cache
+                proxyCache.put("_meta", Map.of("filter",
+                    List.of(List.of("uri", "~~", String.join("|", options.getProxyCachePaths())))));
+            }
+            plugins.put("proxy-cache", proxyCache);
+        }
+
+        if (options.getCompression() != null) {
+            for (String algorithm : options.getCompression()) {
+                // With both enabled, clients accepting br get brotli and the rest fall back to gzip
+                Map<String, Object> compression = new HashMap<>();
+                compression.put("comp_level", "brotli".equals(algorithm) ? 6 : 5);
+                compression.put("min_length", 1024);
+                compression.put("types", COMPRESSIBLE_TYPES);
+                plugins.put(algorithm, compression);
+            }
+        }
+
+        if (options.getLimitReqRate() != null) {
+            Map<String, Object> limitReq = new HashMap<>();
+            limitReq.put("rate", options.getLimitReqRate());
+            limitReq.put("burst", Objects.requireNonNullElse(options.getLimitReqBurst(), options.getLimitReqRate()));
+            limitReq.put("key_type", "var");
+            limitReq.put("key", "remote_addr");
+            limitReq.put("rejected_code", 429);
+            plugins.put("limit-req", limitReq);
+        }
+
+        if (options.getLimitConn() != null) {
+            Map<String, Object> limitConn = new HashMap<>();
+            limitConn.put("conn", options.getLimitConn());
+            limitConn.put("burst", Objects.requireNonNullElse(options.getLimitConnBurst(), 0));
+            limitConn.put("default_conn_delay", 0.1);
+            limitConn.put("key_type", "var");
+            limitConn.put("key", "remote_addr");
+            limitConn.put("rejected_code", 503);
+            plugins.put("limit-conn", limitConn);
+        }
+    }
+
+    private Map<String, Object> buildHealthChecks(String upstreamHost, AutoDnsProperties.UpstreamConfig config) {
+        Map<String, Object> activeHealthy = new HashMap<>();
+        activeHealthy.put("interval", config.getHealthyIntervalSeconds());
+        activeHealthy.put("successes", config.getHealthySuccesses());
+
+        Map<String, Object> activeUnhealthy = new HashMap<>();
+        activeUnhealthy.put("interval", config.getUnhealthyIntervalSeconds());
+        activeUnhealthy.put("tcp_failures", config.getUnhealthyFailures());
+        activeUnhealthy.put("timeouts", config.getUnhealthyFailures());
+
+        Map<String, Object> active = new HashMap<>();
+        active.put("timeout", config.getActiveCheckTimeoutSeconds());
+        if ("http".equalsIgnoreCase(config.getActiveCheckType())) {
+            active.put("type", "http");
+            active.put("http_path", config.getActiveCheckPath());
+            // Checks go to the node IP, the router still needs the original host to pick a backend
+            active.put("host", upstreamHost);
+            activeHealthy.put("http_statuses", List.of(200, 301, 302, 404));
+            activeUnhealthy.put("http_failures", config.getUnhealthyFailures());
+            activeUnhealthy.put("http_statuses", List.of(500, 502, 503, 504));
+        } else {
+            active.put("type", "tcp");
+        }
+        active.put("healthy", activeHealthy);
+        active.put("unhealthy", activeUnhealthy);
+
+        Map<String, Object> passiveHealthy = new HashMap<>();
+        passiveHealthy.put("http_statuses", List.of(200, 201, 202, 204, 301, 302, 304, 404));
+        passiveHealthy.put("successes", config.getHealthySuccesses());
+
+        Map<String, Object> passiveUnhealthy = new HashMap<>();
+        passiveUnhealthy.put("http_statuses", List.of(502, 503, 504));
+        passiveUnhealthy.put("http_failures", config.getUnhealthyFailures());
+        passiveUnhealthy.put("tcp_failures", config.getUnhealthyFailures());
+        passiveUnhealthy.put("timeouts", config.getUnhealthyFailures());
+
+        Map<String, Object> passive = new HashMap<>();
+        passive.put("type", "http");
+        passive.put("healthy", passiveHealthy);
+        passive.put("unhealthy", passiveUnhealthy);
+
+        Map<String, Object> checks = new HashMap<>();
+        checks.put("active", active);
+        checks.put("passive", passive);
+        return checks;
+    }
+
     private void logOperation(String operation, String upstreamHost, String externalHost, Integer nodePort,
                               String requestBody, String responseBody, String status, String errorMessage) {
         ApisixOperation op = new ApisixOperation();
@@ -109,6 +317,6 @@ public class ApisixService {
         op.setResponseBody(responseBody);
         op.setStatus(status);
         op.setErrorMessage(errorMessage);
-        operationRepository.save(op);
+        auditStore.save(op);
     }
 }
@@ -0,0 +1,232 @@
+package io.annopick.gateway.autodns.service;
+
+import io.annopick.gateway.autodns.config.AutoDnsProperties;
+import io.annopick.gateway.autodns.model.ApisixOperation;
+import io.fabric8.kubernetes.api.model.ConfigMap;
+import io.fabric8.kubernetes.api.model.ConfigMapBuilder;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.dsl.NonDeletingOperation;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the desired route set in memory and renders it as an APISIX standalone
+ * {@code apisix.yaml}. Each route is serialized once when it changes; a push only
+ * concatenates the cached fragments and replaces the file or ConfigMap in one step.
+ * Pushes are debounced so that a burst of Ingress events yields a single write.
+ */
+@Slf4j
+@Service
+public class ApisixStandaloneRenderer {
+
+    private final AutoDnsProperties properties;
+    private final KubernetesClient kubernetesClient;
+    private final ApisixAuditStore auditStore;
+    private final Yaml yaml;
+    private final ScheduledExecutorService scheduler;
+
+    // routeId -> rendered route and upstream, sorted for a stable document. One value per
+    // route, so a render never sees a route without the upstream that was put with it.
+    private final Map<String, RouteFragments> fragments = new ConcurrentSkipListMap<>();
+
+    private ScheduledFuture<?> scheduledRender;
+    private long firstDirtyAt;
+    private String lastRendered;
+
+    private record RouteFragments(String route, String upstream) {
+    }
+
+    public ApisixStandaloneRenderer(AutoDnsProperties properties,
+                                    KubernetesClient kubernetesClient,
+                                    ApisixAuditStore auditStore) {
+        this.properties = properties;
+        this.kubernetesClient = kubernetesClient;
+        this.auditStore = auditStore;
+
+        DumperOptions options = new DumperOptions();
+        options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
+        options.setIndent(2);
+        this.yaml = new Yaml(options);
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "apisix-standalone");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Adds or replaces a route; {@code route} is an Admin API route document with an inline upstream.
+     */
+    public void putRoute(String routeId, Map<String, Object> route) {
+        Map<String, Object> routeItem = new LinkedHashMap<>();
+        routeItem.put("id", routeId);
+        route.forEach((key, value) -> {
+            if (!"upstream".equals(key)) {
+                routeItem.put(key, value);
+            }
+        });
+        routeItem.put("upstream_id", routeId);
+
+        Map<String, Object> upstreamItem = new LinkedHashMap<>();
+        upstreamItem.put("id", routeId);
+        @SuppressWarnings("unchecked")
+        Map<String, Object> upstream = (Map<String, Object>) route.get("upstream");
+        if (upstream != null) {
+            upstreamItem.putAll(upstream);
+        }
+
+        RouteFragments rendered = new RouteFragments(yaml.dump(List.of(routeItem)), yaml.dump(List.of(upstreamItem)));
+        if (!rendered.equals(fragments.put(routeId, rendered))) {
+            markDirty();
+        }
+    }
+
+    public void removeRoute(String routeId) {
+        if (fragments.remove(routeId) != null) {
+            markDirty();
+        }
+    }
+
+    private synchronized void markDirty() {
+        AutoDnsProperties.StandaloneConfig config = properties.getApisix().getStandalone();
+        long now = System.currentTimeMillis();
+        if (firstDirtyAt == 0) {
+            firstDirtyAt = now;
+        }
+        // Debounce, but never hold a change back longer than maxDelayMillis
+        long due = Math.min(now + config.getDebounceMillis(), firstDirtyAt + config.getMaxDelayMillis());
+        if (scheduledRender != null) {
+            scheduledRender.cancel(false);
+        }
+        scheduledRender = scheduler.schedule(this::render, Math.max(0, due - now), TimeUnit.MILLISECONDS);
+    }
+
+    private void render() {
+        synchronized (this) {
+            firstDirtyAt = 0;
+            scheduledRender = null;
+        }
+
+        // One snapshot for both sections
+        List<RouteFragments> snapshot = List.copyOf(fragments.values());
+        String document = buildDocument(snapshot);
+        if (document.equals(lastRendered)) {
+            return;
+        }
+
+        String target = describeTarget();
+        try {
+            if ("configmap".equalsIgnoreCase(properties.getApisix().getStandalone().getOutput())) {
+                writeConfigMap(document);
+            } else {
+                writeFile(document);
+            }
+            lastRendered = document;
+            log.info("Rendered {} APISIX routes to {}", snapshot.size(), target);
+            logOperation(target, snapshot.size() + " routes", "SUCCESS", null);
+        } catch (Exception e) {
+            log.error("Failed to render APISIX standalone config to {}", target, e);
+            logOperation(target, null, "FAILED", e.getMessage());
+            scheduleRetry();
+        }
+    }
+
+    private synchronized void scheduleRetry() {
+        // Retry after maxDelayMillis unless a newer change schedules a render first
+        if (scheduledRender == null) {
+            firstDirtyAt = System.currentTimeMillis();
+            scheduledRender = scheduler.schedule(this::render,
+                properties.getApisix().getStandalone().getMaxDelayMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static String buildDocument(List<RouteFragments> snapshot) {
+        StringBuilder document = new StringBuilder();
+        appendSection(document, "routes", snapshot.stream().map(RouteFragments::route).toList());
+        appendSection(document, "upstreams", snapshot.stream().map(RouteFragments::upstream).toList());
+        // APISIX only loads a standalone file that ends with #END
+        document.append("#END\n");
+        return document.toString();
+    }
+
+    private static void appendSection(StringBuilder document, String name, List<String> items) {
+        if (items.isEmpty()) {
+            document.append(name).append(": []\n");
+            return;
+        }
+        document.append(name).append(":\n");
+        items.forEach(document::append);
+    }
+
+    private void writeFile(String document) throws IOException {
+        Path target = Path.of(properties.getApisix().getStandalone().getFilePath()).toAbsolutePath();
+        Files.createDirectories(target.getParent());
+        Path temp = Files.createTempFile(target.getParent(), ".apisix", ".yaml.tmp");
+        try {
+            Files.writeString(temp, document, StandardCharsets.UTF_8);
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private void writeConfigMap(String document) {
+        AutoDnsProperties.StandaloneConfig config = properties.getApisix().getStandalone();
+        ConfigMap configMap = new ConfigMapBuilder()
+            .withNewMetadata()
+                .withName(config.getConfigMapName())
+                .withNamespace(config.getConfigMapNamespace())
+            .endMetadata()
+            .addToData(config.getConfigMapKey(), document)
+            .build();
+        kubernetesClient.configMaps()
+            .inNamespace(config.getConfigMapNamespace())
+            .resource(configMap)
+            .createOr(NonDeletingOperation::update);
+    }
+
+    private String describeTarget() {
+        AutoDnsProperties.StandaloneConfig config = properties.getApisix().getStandalone();
+        if ("configmap".equalsIgnoreCase(config.getOutput())) {
+            return "configmap/" + config.getConfigMapNamespace() + "/" + config.getConfigMapName();
+        }
+        return config.getFilePath();
+    }
+
+    private void logOperation(String target, String responseBody, String status, String errorMessage) {
+        try {
+            ApisixOperation op = new ApisixOperation();
+            op.setOperation("RENDER");
+            op.setExternalHost(target);
+            op.setResponseBody(responseBody);
+            op.setStatus(status);
+            op.setErrorMessage(errorMessage);
+            auditStore.save(op);
+        } catch (Exception e) {
+            log.error("Failed to record APISIX render operation", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdown();
+    }
+}
@@ -0,0 +1,237 @@
+package io.annopick.gateway.autodns.service;
+
+import io.annopick.gateway.autodns.config.AutoDnsProperties;
+import io.annopick.gateway.autodns.dns.DnsChange;
+import io.annopick.gateway.autodns.dns.DnsProvider;
+import io.annopick.gateway.autodns.dns.DnsResult;
+import io.annopick.gateway.autodns.model.DnsRecord;
+import io.annopick.gateway.autodns.repository.DnsRecordRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects DNS changes of a burst (namespace teardown, IP rotation, initial sync)
+ * and submits them to {@link DnsProvider#applyBatch} together. A batch is flushed
+ * once the window after the first queued change elapses or the batch size is reached.
+ * Successful RR_ADD results are written back to the matching {@link DnsRecord} rows.
+ * <p>
+ * A provider may reorder the changes of one batch (Alidns runs all adds before all
+ * deletes), so a change that conflicts with one already queued for the same RR (a
+ * delete that would remove a queued add, or the reverse) closes the current batch
+ * first. Batches run one after another, which keeps the enqueue order per RR.
+ */
+@Slf4j
+@Service
+public class DnsBatchCollector {
+
+    private final DnsProvider dnsProvider;
+    private final DnsRecordRepository dnsRecordRepository;
+    private final AutoDnsProperties properties;
+    private final ScheduledExecutorService scheduler;
+
+    private List<Pending> pending = new ArrayList<>();
+    // zone|rr -> changes of the pending batch
+    private Map<String, List<DnsChange>> pendingByRr = new HashMap<>();
+    // zone|rr -> future of the last change queued for it, until that change completes
+    private final Map<String, CompletableFuture<DnsResult>> lastByRr = new ConcurrentHashMap<>();
+    private ScheduledFuture<?> scheduledFlush;
+    // Incremented whenever the pending batch is handed off; a window timer for an older batch does nothing
+    private long batchGeneration;
+
+    private record Pending(DnsChange change, CompletableFuture<DnsResult> future) {
+    }
+
+    public DnsBatchCollector(DnsProvider dnsProvider,
+                             DnsRecordRepository dnsRecordRepository,
+                             AutoDnsProperties properties) {
+        this.dnsProvider = dnsProvider;
+        this.dnsRecordRepository = dnsRecordRepository;
+        this.properties = properties;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "dns-batch");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public CompletableFuture<DnsResult> enqueue(DnsChange change) {
+        CompletableFuture<DnsResult> future = new CompletableFuture<>();
+        String key = rrKey(change.getZone(), change.getRr());
+        synchronized (this) {
+            List<DnsChange> sameRr = pendingByRr.get(key);
+            if (sameRr != null && sameRr.stream().anyMatch(queued -> conflicts(queued, change))) {
+                log.debug("{} {}.{} conflicts with a queued change, closing the batch",
+                    change.getOperation(), change.getRr(), change.getZone());
+                closeBatch();
+            }
+            pending.add(new Pending(change, future));
+            pendingByRr.computeIfAbsent(key, k -> new ArrayList<>()).add(change);
+            lastByRr.put(key, future);
+            if (pending.size() >= properties.getAliyun().getBatchSize()) {
+                closeBatch();
+            } else if (scheduledFlush == null) {
+                long generation = batchGeneration;
+                scheduledFlush = scheduler.schedule(() -> flushPending(generation),
+                    properties.getAliyun().getBatchWindowMillis(), TimeUnit.MILLISECONDS);
+            }
+        }
+        future.whenComplete((result, e) -> lastByRr.remove(key, future));
+        return future;
+    }
+
+    public List<CompletableFuture<DnsResult>> enqueueAll(List<DnsChange> changes) {
+        List<CompletableFuture<DnsResult>> futures = new ArrayList<>(changes.size());
+        for (DnsChange change : changes) {
+            futures.add(enqueue(change));
+        }
+        return futures;
+    }
+
+    /**
+     * Completes once every change queued so far for the RR has been applied, submitting
+     * them right away instead of at the end of the window. Writes that bypass the
+     * collector call this first so they cannot be overtaken by an older queued change.
+     */
+    public CompletableFuture<Void> drain(String zone, String rr) {
+        String key = rrKey(zone, rr);
+        CompletableFuture<DnsResult> last;
+        synchronized (this) {
+            last = lastByRr.get(key);
+            if (last == null) {
+                return CompletableFuture.completedFuture(null);
+            }
+            if (pendingByRr.containsKey(key)) {
+                closeBatch();
+            }
+        }
+        return last.handle((result, e) -> null);
+    }
+
+    /**
+     * True when the provider could reorder the two changes with a different outcome:
+     * one deletes what the other adds.
+     */
+    private static boolean conflicts(DnsChange queued, DnsChange change) {
+        if (queued.getOperation().equals(change.getOperation())) {
+            return false;
+        }
+        DnsChange delete = DnsChange.DELETE.equals(change.getOperation()) ? change : queued;
+        DnsChange add = delete == change ? queued : change;
+        if (delete.getType() != null && !delete.getType().equalsIgnoreCase(add.getType())) {
+            return false;
+        }
+        return delete.getValue() == null || delete.getValue().equalsIgnoreCase(add.getValue());
+    }
+
+    // Caller holds the lock
+    private void closeBatch() {
+        List<Pending> batch = pending;
+        pending = new ArrayList<>();
+        pendingByRr = new HashMap<>();
+        batchGeneration++;
+        cancelScheduledFlush();
+        if (!batch.isEmpty()) {
+            scheduler.execute(() -> flush(batch));
+        }
+    }
+
+    private void flushPending(long generation) {
+        List<Pending> batch;
+        synchronized (this) {
+            if (generation != batchGeneration) {
+                return;
+            }
+            batchGeneration++;
+            batch = pending;
+            pending = new ArrayList<>();
+            pendingByRr = new HashMap<>();
+            scheduledFlush = null;
+        }
+        flush(batch);
+    }
+
+    private void flush(List<Pending> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        List<DnsChange> changes = batch.stream().map(Pending::change).toList();
+        try {
+            List<DnsResult> results = dnsProvider.applyBatch(changes).join();
+            mapRecordIds(changes, results);
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).future().complete(results.get(i));
+            }
+        } catch (Exception e) {
+            log.error("Failed to flush DNS batch of {} changes", batch.size(), e);
+            batch.forEach(p -> p.future().completeExceptionally(e));
+        }
+    }
+
+    private void mapRecordIds(List<DnsChange> changes, List<DnsResult> results) {
+        for (int i = 0; i < changes.size(); i++) {
+            DnsChange change = changes.get(i);
+            DnsResult result = results.get(i);
+            if (!DnsChange.ADD.equals(change.getOperation())
+                    || result == null || !result.isSuccess() || result.getRecordId() == null) {
+                continue;
+            }
+            try {
+                for (DnsRecord record : dnsRecordRepository.findByRr(change.getRr())) {
+                    if (record.getRecordId() == null && isRecordOf(record, change)) {
+                        record.setRecordId(result.getRecordId());
+                        dnsRecordRepository.save(record);
+                        log.debug("Mapped RecordId {} to host {}", result.getRecordId(), record.getHost());
+                    }
+                }
+            } catch (Exception e) {
+                log.error("Failed to map RecordId {} back to RR {}", result.getRecordId(), change.getRr(), e);
+            }
+        }
+    }
+
+    /**
+     * True when the row holds the added record: same zone (rows without one are in the
+     * default zone), same type and the value among its IPs. The same RR may exist in
+     * several zones.
+     */
+    private boolean isRecordOf(DnsRecord record, DnsChange add) {
+        String zone = record.getZone() != null ? record.getZone() : properties.getAliyun().getDomain();
+        String type = record.getRecordType() != null ? record.getRecordType() : "A";
+        return zone.equalsIgnoreCase(add.getZone())
+            && type.equalsIgnoreCase(add.getType())
+            && IngressWatcher.splitIps(record.getIpAddresses()).contains(add.getValue());
+    }
+
+    private void cancelScheduledFlush() {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+    }
+
+    private static String rrKey(String zone, String rr) {
+        return (zone != null ? zone.toLowerCase(Locale.ROOT) : "") + "|" + rr;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        synchronized (this) {
+            closeBatch();
+        }
+        scheduler.shutdown();
+    }
+}
@@ -1,17 +1,23 @@
 package io.annopick.gateway.autodns.service;
 
 import io.annopick.gateway.autodns.config.AutoDnsProperties;
+import io.annopick.gateway.autodns.dns.DnsChange;
+import io.annopick.gateway.autodns.dns.DnsProvider;
+import io.annopick.gateway.autodns.dns.DnsRecordInfo;
+import io.annopick.gateway.autodns.dns.DnsResult;
+import io.annopick.gateway.autodns.mapping.HostMappingEngine;
+import io.annopick.gateway.autodns.mapping.MappedHost;
 import io.annopick.gateway.autodns.model.DnsRecord;
 import io.annopick.gateway.autodns.repository.DnsRecordRepository;
-import io.annopick.gateway.autodns.repository.PublicIpRecordRepository;
 import io.fabric8.kubernetes.api.model.Service;
 import io.fabric8.kubernetes.api.model.networking.v1.Ingress;
 import io.fabric8.kubernetes.client.KubernetesClient;
 import io.fabric8.kubernetes.client.informers.ResourceEventHandler;
 import io.fabric8.kubernetes.client.informers.SharedIndexInformer;
-import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
@@ -19,6 +25,8 @@ import org.springframework.transaction.annotation.Transactional;
 import java.net.InetAddress;
 import java.net.NetworkInterface;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -28,14 +36,22 @@ public class IngressWatcher {
 
     private final KubernetesClient kubernetesClient;
     private final AutoDnsProperties properties;
-    private final AliyunDnsService aliyunDnsService;
+    private final DnsProvider dnsProvider;
+    private final DnsBatchCollector dnsBatchCollector;
     private final ApisixService apisixService;
     private final DnsRecordRepository dnsRecordRepository;
-    private final PublicIpRecordRepository publicIpRecordRepository;
+    private final PublicIpCache publicIpCache;
+    private final HostMappingEngine hostMappingEngine;
 
-    @PostConstruct
+    private volatile SharedIndexInformer<Ingress> informer;
+    // Until the first reconcile: uids whose ADD event was handled, and the uids listed by the sync
+    private final Set<String> handledAdds = ConcurrentHashMap.newKeySet();
+    private volatile Set<String> syncedUids;
+    private volatile boolean reconciled;
+
+    @EventListener(ApplicationStartedEvent.class)
     public void startWatching() {
-        SharedIndexInformer<Ingress> informer = kubernetesClient
+        informer = kubernetesClient
             .network()
             .v1()
             .ingresses()
@@ -46,6 +62,9 @@ public class IngressWatcher {
             @Override
             public void onAdd(Ingress ingress) {
                 processIngress(ingress, null, "ADD");
+                if (!reconciled) {
+                    handledAdds.add(ingress.getMetadata().getUid());
+                }
             }
 
             @Override
@@ -62,6 +81,42 @@ public class IngressWatcher {
         log.info("Ingress watcher started");
     }
 
+    /**
+     * True once the informer has listed all Ingresses; the initial ADD events are then queued.
+     */
+    public boolean hasSynced() {
+        SharedIndexInformer<Ingress> current = informer;
+        return current != null && current.hasSynced();
+    }
+
+    /**
+     * True once the informer has synced and the ADD event of every Ingress it listed has
+     * been handled, i.e. DNS records and routes were reconciled with the whole cluster.
+     * Polled by a single thread during startup.
+     */
+    public boolean hasReconciled() {
+        if (reconciled) {
+            return true;
+        }
+        SharedIndexInformer<Ingress> current = informer;
+        if (current == null || !current.hasSynced()) {
+            return false;
+        }
+        if (syncedUids == null) {
+            // May include Ingresses created since the sync; their ADD events follow just as well
+            syncedUids = current.getStore().list().stream()
+                .map(ingress -> ingress.getMetadata().getUid())
+                .collect(Collectors.toSet());
+        }
+        if (handledAdds.containsAll(syncedUids)) {
+            log.info("Initial reconcile of {} Ingresses done", syncedUids.size());
+            reconciled = true;
+            handledAdds.clear();
+            syncedUids = null;
+        }
+        return reconciled;
+    }
+
     @Transactional
     public void processIngress(Ingress ingress, Ingress oldIngress, String action) {
         try {
@@ -72,14 +127,14 @@ public class IngressWatcher {
 
             List<String> hosts = ingress.getSpec().getRules().stream()
                 .map(rule -> rule.getHost())
-                .filter(host -> host != null && host.endsWith(properties.getHostSuffix()))
+                .filter(hostMappingEngine::isManaged)
                 .collect(Collectors.toList());
 
             // Handle UPDATE: detect removed hosts
             if ("UPDATE".equals(action) && oldIngress != null) {
                 List<String> oldHosts = oldIngress.getSpec().getRules().stream()
                     .map(rule -> rule.getHost())
-                    .filter(host -> host != null && host.endsWith(properties.getHostSuffix()))
+                    .filter(hostMappingEngine::isManaged)
                     .collect(Collectors.toList());
                 
                 // Find hosts that were removed in the update
@@ -95,11 +150,14 @@ public class IngressWatcher {
                 return;
             }
 
+            String site = resolveSite(ingress, ingressClassName);
+            ApisixRouteOptions routeOptions = ApisixRouteOptions.fromAnnotations(
+                ingress.getMetadata().getAnnotations(), properties.getApisix().getAnnotationPrefix());
             for (String host : hosts) {
                 if ("DELETE".equals(action)) {
                     handleDelete(host);
                 } else {
-                    handleAddOrUpdate(host, ingressClassName);
+                    handleAddOrUpdate(host, ingressClassName, site, routeOptions);
                 }
             }
         } catch (Exception e) {
@@ -107,9 +165,26 @@ public class IngressWatcher {
         }
     }
 
-    private void handleAddOrUpdate(String host, String ingressClassName) {
+    /**
+     * Site of an Ingress: the site annotation wins, then the ingress class mapping,
+     * then the configured default site.
+     */
+    private String resolveSite(Ingress ingress, String ingressClassName) {
+        AutoDnsProperties.SiteConfig siteConfig = properties.getSite();
+        Map<String, String> annotations = ingress.getMetadata().getAnnotations();
+        if (annotations != null) {
+            String site = annotations.get(siteConfig.getAnnotation());
+            if (site != null && !site.isBlank()) {
+                return site.trim();
+            }
+        }
+        return siteConfig.getIngressClassSites().getOrDefault(ingressClassName, siteConfig.getDefaultSite());
+    }
+
+    private void handleAddOrUpdate(String host, String ingressClassName, String site, ApisixRouteOptions routeOptions) {
         try {
-            String rr = host.replace("." + properties.getAliyun().getDomain(), "");
+            MappedHost mapped = hostMappingEngine.match(host).orElseThrow();
+            String rr = mapped.rr();
             String svcName = ingressClassName.replace(properties.getIngressClassSuffix(), "");
             
             Service service = kubernetesClient.services()
@@ -135,102 +210,118 @@ public class IngressWatcher {
 
             List<String> nodeIps = getNodeIps();
             String ipAddresses = String.join(",", nodeIps);
+            String routeOptionsJson = routeOptions.toJson();
 
             Optional<DnsRecord> existingRecord = dnsRecordRepository.findByHost(host);
 
             if (existingRecord.isPresent()) {
                 DnsRecord record = existingRecord.get();
-                if (!record.getIpAddresses().equals(ipAddresses) || !record.getNodePort().equals(nodePort)) {
-                    boolean dnsUpdateSuccess = true;
-                    for (String ip : nodeIps) {
-                        boolean success = aliyunDnsService.updateDomainRecord(record.getRecordId(), rr, "A", ip);
-                        if (!success) {
-                            dnsUpdateSuccess = false;
-                            log.warn("Failed to update DNS record for {} -> {}", rr, ip);
-                        }
+                if (!record.getSite().equals(site)) {
+                    log.info("Host {} moved from site {} to site {}", host, record.getSite(), site);
+                    record.setSite(site);
+                    dnsRecordRepository.save(record);
+                }
+                List<DnsChange> changes = dnsChanges(record, mapped, nodeIps, properties.getAliyun().getDomain());
+                if (!changes.isEmpty() || !record.getNodePort().equals(nodePort)
+                        || !Objects.equals(record.getRouteOptions(), routeOptionsJson)) {
+                    // Update database and APISIX regardless of DNS API result. Saved before the DNS batch
+                    // runs so the batch collector maps new RecordIds onto the row's new name and IPs
+                    if (!isSameName(record, mapped, properties.getAliyun().getDomain())) {
+                        record.setRecordId(null);
                     }
-                    
-                    // Update database and APISIX regardless of DNS API result
+                    record.setZone(mapped.zone());
+                    record.setRr(rr);
+                    record.setRecordType(mapped.recordType());
                     record.setIpAddresses(ipAddresses);
                     record.setNodePort(nodePort);
+                    record.setRouteOptions(routeOptionsJson);
                     dnsRecordRepository.save(record);
 
-                    String externalHost = host.replace(properties.getHostSuffix(), properties.getExternalDomainSuffix());
-                    apisixService.updateRoute(externalHost, host, nodePort);
+                    boolean dnsUpdateSuccess = true;
+                    List<CompletableFuture<DnsResult>> updates = dnsBatchCollector.enqueueAll(changes);
+                    for (int i = 0; i < updates.size(); i++) {
+                        DnsResult result = updates.get(i).exceptionally(e -> DnsResult.failed(null, null, null, null, e.getMessage())).join();
+                        if (!result.isSuccess()) {
+                            dnsUpdateSuccess = false;
+                            log.warn("Failed to {} DNS record for {} -> {}: {}", changes.get(i).getOperation(),
+                                changes.get(i).getRr(), changes.get(i).getValue(), result.getReason());
+                        }
+                    }
+
+                    apisixService.updateRoute(mapped.externalHost(), host, nodePort, nodeIps, routeOptions);
                     
                     if (!dnsUpdateSuccess) {
                         log.error("DNS update partially failed for host {}, but database and APISIX were updated", host);
                     }
                 }
             } else {
-                String recordId = null;
-                boolean dnsAddSuccess = false;
-                for (String ip : nodeIps) {
-                    String rid = aliyunDnsService.addDomainRecord(rr, "A", ip);
-                    if (rid != null) {
-                        recordId = rid;
-                        dnsAddSuccess = true;
-                    } else {
-                        log.warn("Failed to add DNS record for {} -> {}", rr, ip);
-                    }
-                }
-
-                // Save to database even if DNS API failed
+                // Save to database before the DNS batch runs; the batch collector maps the RecordId back
                 DnsRecord record = new DnsRecord();
                 record.setHost(host);
                 record.setRr(rr);
+                record.setZone(mapped.zone());
+                record.setRecordType(mapped.recordType());
                 record.setIpAddresses(ipAddresses);
                 record.setNodePort(nodePort);
-                record.setRecordId(recordId);
+                record.setSite(site);
+                record.setRouteOptions(routeOptionsJson);
                 dnsRecordRepository.save(record);
 
-                String externalHost = host.replace(properties.getHostSuffix(), properties.getExternalDomainSuffix());
-                apisixService.addRoute(externalHost, host, nodePort);
-                
-                if (!dnsAddSuccess) {
-                    log.error("DNS add failed for host {}, but database and APISIX were updated. Manual DNS configuration may be required.", host);
-                }
+                List<CompletableFuture<DnsResult>> adds = dnsBatchCollector.enqueueAll(nodeIps.stream()
+                    .map(ip -> DnsChange.add(mapped.zone(), rr, mapped.recordType(), ip))
+                    .collect(Collectors.toList()));
+                CompletableFuture.allOf(adds.toArray(new CompletableFuture[0])).whenComplete((ignored, e) -> {
+                    boolean dnsAddSuccess = e == null && adds.stream().anyMatch(f -> f.join().isSuccess());
+                    if (!dnsAddSuccess) {
+                        log.error("DNS add failed for host {}, but database and APISIX were updated. Manual DNS configuration may be required.", host);
+                    }
+                });
+
+                apisixService.addRoute(mapped.externalHost(), host, nodePort, nodeIps, routeOptions);
             }
             
             // Manage public DNS record for external host
-            managePublicDnsRecord(host);
+            managePublicDnsRecord(mapped, site);
             
         } catch (Exception e) {
             log.error("Failed to handle add/update for host: {}", host, e);
         }
     }
     
-    private void managePublicDnsRecord(String host) {
+    private void managePublicDnsRecord(MappedHost mapped, String site) {
         try {
-            // Get external host (e.g., test-k8s.jsccb.ltd -> test-nj.jsccb.ltd)
-            String externalHost = host.replace(properties.getHostSuffix(), properties.getExternalDomainSuffix());
-            String externalRr = externalHost.replace("." + properties.getAliyun().getDomain(), "");
+            // External host from the host mapping (e.g., test-k8s.jsccb.ltd -> test-nj.jsccb.ltd)
+            String externalHost = mapped.externalHost();
+            String externalRr = mapped.externalRr();
             
-            // Get public IP from PublicIpRecord table
-            Optional<io.annopick.gateway.autodns.model.PublicIpRecord> publicIpRecord = 
-                publicIpRecordRepository.findByIdentifier("default");
+            // Get public IP of the host's site from the in-memory snapshot
+            Optional<String> publicIpAddress = publicIpCache.getIpAddress(site);
             
-            if (!publicIpRecord.isPresent()) {
-                log.warn("Public IP record not found (identifier=default). Agent may not have reported IP yet. Skipping public DNS record creation for {}", externalHost);
+            if (!publicIpAddress.isPresent()) {
+                log.warn("Public IP record not found (identifier={}). Agent may not have reported IP yet. Skipping public DNS record creation for {}", site, externalHost);
                 return;
             }
             
-            String publicIp = publicIpRecord.get().getIpAddress();
+            String publicIp = publicIpAddress.get();
             
             // Determine record type based on IP version
             String recordType = isIPv6(publicIp) ? "AAAA" : "A";
             
             log.info("Managing public DNS record: {} -> {} (Type: {})", externalHost, publicIp, recordType);
             
+            // A delete of this record may still be queued (host deleted and recreated); let it run first
+            dnsBatchCollector.drain(mapped.externalZone(), externalRr).join();
+
             // Check if public DNS record already exists
-            var existingPublicRecord = aliyunDnsService.queryDomainRecord(externalRr);
+            Optional<DnsRecordInfo> existingPublicRecord = dnsProvider.queryRecord(mapped.externalZone(), externalRr).join();
             
-            if (existingPublicRecord != null) {
+            if (existingPublicRecord.isPresent()) {
+                DnsRecordInfo existing = existingPublicRecord.get();
                 // Update if IP changed or record type changed
-                if (!publicIp.equals(existingPublicRecord.getValue()) || !recordType.equals(existingPublicRecord.getType())) {
-                    boolean success = aliyunDnsService.updateDomainRecord(
-                        existingPublicRecord.getRecordId(), externalRr, recordType, publicIp);
-                    if (success) {
+                if (!publicIp.equals(existing.getValue()) || !recordType.equals(existing.getType())) {
+                    DnsResult result = dnsProvider.updateRecord(
+                        existing.getRecordId(), mapped.externalZone(), externalRr, recordType, publicIp).join();
+                    if (result.isSuccess()) {
                         log.info("Updated public DNS record: {} -> {} (Type: {})", externalHost, publicIp, recordType);
                     } else {
                         log.error("Failed to update public DNS record for {}", externalHost);
@@ -240,15 +331,15 @@ public class IngressWatcher {
                 }
             } else {
                 // Create new public DNS record
-                String recordId = aliyunDnsService.addDomainRecord(externalRr, recordType, publicIp);
-                if (recordId != null) {
-                    log.info("Created public DNS record: {} -> {} (Type: {}, RecordId: {})", externalHost, publicIp, recordType, recordId);
+                DnsResult result = dnsProvider.addRecord(mapped.externalZone(), externalRr, recordType, publicIp).join();
+                if (result.isSuccess()) {
+                    log.info("Created public DNS record: {} -> {} (Type: {}, RecordId: {})", externalHost, publicIp, recordType, result.getRecordId());
                 } else {
                     log.error("Failed to create public DNS record for {}", externalHost);
                 }
             }
         } catch (Exception e) {
-            log.error("Failed to manage public DNS record for host: {}", host, e);
+            log.error("Failed to manage public DNS record for host: {}", mapped.host(), e);
         }
     }
     
@@ -264,23 +355,30 @@ public class IngressWatcher {
                 DnsRecord record = existingRecord.get();
                 
                 // Delete APISIX route first (before database)
-                String externalHost = host.replace(properties.getHostSuffix(), properties.getExternalDomainSuffix());
-                apisixService.deleteRoute(externalHost);
+                Optional<MappedHost> mapped = hostMappingEngine.match(host);
+                if (mapped.isPresent()) {
+                    apisixService.deleteRoute(mapped.get().externalHost());
+                } else {
+                    log.warn("No host mapping matches {} any more, its APISIX route and public DNS record are left in place", host);
+                }
                 
-                boolean dnsDeleteSuccess = aliyunDnsService.deleteDomainRecord(record.getRecordId());
-                if (!dnsDeleteSuccess) {
-                    log.error("Failed to delete DNS record for host {}, RecordId: {}", host, record.getRecordId());
+                // Batched delete of the records this row created, one per node IP; never RR-wide,
+                // so a re-add of the host queued after this delete is not removed with it
+                String zone = record.getZone() != null ? record.getZone() : properties.getAliyun().getDomain();
+                for (String ip : splitIps(record.getIpAddresses())) {
+                    dnsBatchCollector.enqueue(DnsChange.delete(zone, record.getRr(), record.getRecordType(), ip)).whenComplete((result, e) -> {
+                        if (e != null || !result.isSuccess()) {
+                            log.error("DNS delete failed for host {} -> {}, but database and APISIX were updated. Manual DNS cleanup may be required. Reason: {}",
+                                host, ip, e != null ? e.getMessage() : result.getReason());
+                        }
+                    });
                 }
                 
                 // Delete from database regardless of DNS API result
                 dnsRecordRepository.deleteByHost(host);
                 
-                if (!dnsDeleteSuccess) {
-                    log.error("DNS delete failed for host {}, but database and APISIX were updated. Manual DNS cleanup may be required.", host);
-                }
-                
                 // Delete public DNS record for external host
-                deletePublicDnsRecord(host);
+                mapped.ifPresent(m -> deletePublicDnsRecord(m, record.getSite()));
                 
                 log.info("Successfully deleted all resources for host: {}", host);
             }
@@ -289,28 +387,78 @@ public class IngressWatcher {
         }
     }
     
-    private void deletePublicDnsRecord(String host) {
+    private void deletePublicDnsRecord(MappedHost mapped, String site) {
         try {
-            // Get external host (e.g., test-k8s.jsccb.ltd -> test-nj.jsccb.ltd)
-            String externalHost = host.replace(properties.getHostSuffix(), properties.getExternalDomainSuffix());
-            String externalRr = externalHost.replace("." + properties.getAliyun().getDomain(), "");
-            
-            // Query existing public DNS record
-            var existingPublicRecord = aliyunDnsService.queryDomainRecord(externalRr);
-            
-            if (existingPublicRecord != null) {
-                boolean success = aliyunDnsService.deleteDomainRecord(existingPublicRecord.getRecordId());
-                if (success) {
-                    log.info("Deleted public DNS record: {} (RecordId: {})", externalHost, existingPublicRecord.getRecordId());
+            String externalHost = mapped.externalHost();
+
+            // The public record points at the site's current public IP (see managePublicDnsRecord)
+            Optional<String> publicIpAddress = publicIpCache.getIpAddress(site);
+            if (!publicIpAddress.isPresent()) {
+                log.warn("Public IP of site {} unknown, no public DNS record to delete for {}", site, externalHost);
+                return;
+            }
+            String publicIp = publicIpAddress.get();
+            String recordType = isIPv6(publicIp) ? "AAAA" : "A";
+
+            dnsBatchCollector.enqueue(DnsChange.delete(mapped.externalZone(), mapped.externalRr(), recordType, publicIp)).whenComplete((result, e) -> {
+                if (e == null && result.isSuccess()) {
+                    log.info("Deleted public DNS record: {} -> {}", externalHost, publicIp);
                 } else {
-                    log.error("Failed to delete public DNS record for {} (RecordId: {})", externalHost, existingPublicRecord.getRecordId());
+                    log.error("Failed to delete public DNS record for {}: {}", externalHost,
+                        e != null ? e.getMessage() : result.getReason());
                 }
-            } else {
-                log.debug("No public DNS record found for {}, nothing to delete", externalHost);
-            }
+            });
         } catch (Exception e) {
-            log.error("Failed to delete public DNS record for host: {}", host, e);
+            log.error("Failed to delete public DNS record for host: {}", mapped.host(), e);
+        }
+    }
+
+    /**
+     * Changes that move the DNS records of {@code record} to the host's current mapping and
+     * node IPs, one record per IP. While zone, rr and record type stay the same, only the
+     * new IPs are added and the gone ones deleted; when any of them changed, every old IP is
+     * deleted under the old name and every current IP added under the new one.
+     */
+    static List<DnsChange> dnsChanges(DnsRecord record, MappedHost mapped, List<String> nodeIps, String defaultZone) {
+        List<String> oldIps = splitIps(record.getIpAddresses());
+        boolean sameName = isSameName(record, mapped, defaultZone);
+        List<DnsChange> changes = new ArrayList<>();
+        for (String ip : nodeIps) {
+            if (!sameName || !oldIps.contains(ip)) {
+                changes.add(DnsChange.add(mapped.zone(), mapped.rr(), mapped.recordType(), ip));
+            }
+        }
+        for (String ip : oldIps) {
+            if (!sameName || !nodeIps.contains(ip)) {
+                changes.add(DnsChange.delete(zoneOf(record, defaultZone), record.getRr(), typeOf(record), ip));
+            }
+        }
+        return changes;
+    }
+
+    private static boolean isSameName(DnsRecord record, MappedHost mapped, String defaultZone) {
+        return zoneOf(record, defaultZone).equalsIgnoreCase(mapped.zone())
+            && record.getRr().equals(mapped.rr())
+            && typeOf(record).equalsIgnoreCase(mapped.recordType());
+    }
+
+    // Rows created before host mappings have no zone or type
+    private static String zoneOf(DnsRecord record, String defaultZone) {
+        return record.getZone() != null ? record.getZone() : defaultZone;
+    }
+
+    private static String typeOf(DnsRecord record) {
+        return record.getRecordType() != null ? record.getRecordType() : "A";
+    }
+
+    static List<String> splitIps(String ipAddresses) {
+        if (ipAddresses == null || ipAddresses.isBlank()) {
+            return Collections.emptyList();
         }
+        return Arrays.stream(ipAddresses.split(","))
+            .map(String::trim)
+            .filter(ip -> !ip.isEmpty())
+            .collect(Collectors.toList());
     }
 
     private List<String> getNodeIps() {
@@ -0,0 +1,100 @@
+package io.annopick.gateway.autodns.service;
+
+import io.annopick.gateway.autodns.model.PublicIpRecord;
+import io.annopick.gateway.autodns.repository.PublicIpRecordRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Authoritative in-process snapshot of the current public IP per site.
+ * Reads never touch the database; writes go through to public_ip_records
+ * before the snapshot is replaced. Assumes a single server replica.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PublicIpCache {
+
+    private final PublicIpRecordRepository publicIpRecordRepository;
+    private final Map<String, Snapshot> snapshots = new ConcurrentHashMap<>();
+
+    public record Snapshot(String ipAddress, String etag) {
+    }
+
+    /**
+     * A stored IP change; {@code previousIpAddress} is null on the first report of a site.
+     */
+    public record Change(String previousIpAddress) {
+    }
+
+    /**
+     * Loaded once the context is up rather than while beans are created, so a CDS
+     * training run can refresh the context without a database. Runs before the
+     * Ingress informer starts.
+     */
+    @EventListener(ApplicationStartedEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void load() {
+        for (PublicIpRecord record : publicIpRecordRepository.findAll()) {
+            snapshots.put(record.getIdentifier(), snapshotOf(record.getIpAddress()));
+        }
+        log.info("Loaded {} public IP records into cache", snapshots.size());
+    }
+
+    public Optional<Snapshot> get(String site) {
+        return Optional.ofNullable(snapshots.get(site));
+    }
+
+    public Optional<String> getIpAddress(String site) {
+        return get(site).map(Snapshot::ipAddress);
+    }
+
+    /**
+     * Stores the IP of a site, writing through to the database. The replaced IP is read
+     * under the same lock, so concurrent reports of a site each see the IP they replaced.
+     *
+     * @return the change if the IP differs from the cached one and was persisted
+     */
+    public synchronized Optional<Change> update(String site, String ipAddress) {
+        Snapshot current = snapshots.get(site);
+        if (current != null && current.ipAddress().equals(ipAddress)) {
+            return Optional.empty();
+        }
+
+        PublicIpRecord record = publicIpRecordRepository.findByIdentifier(site).orElseGet(() -> {
+            PublicIpRecord created = new PublicIpRecord();
+            created.setIdentifier(site);
+            return created;
+        });
+        if (record.getId() != null) {
+            log.info("Public IP of site {} changed from {} to {}", site, record.getIpAddress(), ipAddress);
+        }
+        record.setIpAddress(ipAddress);
+        publicIpRecordRepository.save(record);
+
+        snapshots.put(site, snapshotOf(ipAddress));
+        return Optional.of(new Change(current != null ? current.ipAddress() : null));
+    }
+
+    private static Snapshot snapshotOf(String ipAddress) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(ipAddress.getBytes(StandardCharsets.UTF_8));
+            return new Snapshot(ipAddress, "\"" + HexFormat.of().formatHex(digest, 0, 8) + "\"");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
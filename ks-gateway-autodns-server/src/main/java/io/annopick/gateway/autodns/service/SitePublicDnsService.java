@@ -0,0 +1,155 @@
+package io.annopick.gateway.autodns.service;
+
+import io.annopick.gateway.autodns.config.AutoDnsProperties;
+import io.annopick.gateway.autodns.dns.DnsChange;
+import io.annopick.gateway.autodns.dns.DnsProvider;
+import io.annopick.gateway.autodns.dns.DnsResult;
+import io.annopick.gateway.autodns.mapping.HostMappingEngine;
+import io.annopick.gateway.autodns.mapping.MappedHost;
+import io.annopick.gateway.autodns.model.DnsRecord;
+import io.annopick.gateway.autodns.repository.DnsRecordRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fans public IP changes out to the external DNS records of a single site.
+ * Updates for different sites run in parallel; updates for the same site are
+ * chained so that a newer IP is never overwritten by an older one.
+ */
+@Slf4j
+@Service
+public class SitePublicDnsService {
+
+    private final DnsRecordRepository dnsRecordRepository;
+    private final DnsProvider dnsProvider;
+    private final DnsBatchCollector dnsBatchCollector;
+    private final HostMappingEngine hostMappingEngine;
+    private final ExecutorService executor;
+    private final Map<String, CompletableFuture<Void>> siteTails = new ConcurrentHashMap<>();
+
+    public SitePublicDnsService(DnsRecordRepository dnsRecordRepository,
+                                DnsProvider dnsProvider,
+                                DnsBatchCollector dnsBatchCollector,
+                                HostMappingEngine hostMappingEngine,
+                                AutoDnsProperties properties) {
+        this.dnsRecordRepository = dnsRecordRepository;
+        this.dnsProvider = dnsProvider;
+        this.dnsBatchCollector = dnsBatchCollector;
+        this.hostMappingEngine = hostMappingEngine;
+
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(
+            Math.max(1, properties.getSite().getUpdateThreads()),
+            r -> {
+                Thread t = new Thread(r, "site-dns-" + counter.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+    }
+
+    /**
+     * @param previousIpAddress the IP the site's records currently point to, or null if unknown
+     */
+    public CompletableFuture<Void> submit(String site, String ipAddress, String previousIpAddress) {
+        return siteTails.compute(site, (key, tail) -> {
+            CompletableFuture<Void> previous = tail != null ? tail : CompletableFuture.completedFuture(null);
+            return previous
+                .exceptionally(e -> null)
+                .thenRunAsync(() -> updateSiteRecords(site, ipAddress, previousIpAddress), executor);
+        });
+    }
+
+    private void updateSiteRecords(String site, String ipAddress, String previousIpAddress) {
+        List<DnsRecord> siteRecords = dnsRecordRepository.findBySite(site);
+        log.info("Updating {} external DNS records of site {} -> {}", siteRecords.size(), site, ipAddress);
+
+        if (previousIpAddress != null) {
+            rotateSiteRecords(site, siteRecords, ipAddress, previousIpAddress);
+            return;
+        }
+
+        // Unknown old value: query and upsert every host, with all hosts in flight at once
+        String recordType = ipAddress.contains(":") ? "AAAA" : "A";
+        List<CompletableFuture<DnsResult>> upserts = new ArrayList<>(siteRecords.size());
+        for (DnsRecord record : siteRecords) {
+            MappedHost mapped = mapOrWarn(record);
+            if (mapped == null) {
+                continue;
+            }
+            String externalHost = mapped.externalHost();
+            String externalZone = mapped.externalZone();
+            String externalRr = mapped.externalRr();
+
+            upserts.add(dnsBatchCollector.drain(externalZone, externalRr)
+                .thenCompose(ignored -> dnsProvider.queryRecord(externalZone, externalRr))
+                .thenCompose(existing -> existing.isPresent()
+                    ? dnsProvider.updateRecord(existing.get().getRecordId(), externalZone, externalRr, recordType, ipAddress)
+                    : dnsProvider.addRecord(externalZone, externalRr, recordType, ipAddress))
+                .whenComplete((result, e) -> {
+                    if (e == null && result.isSuccess()) {
+                        log.info("Updated external DNS record: {} -> {} (site: {})", externalHost, ipAddress, site);
+                    } else {
+                        log.error("Failed to update external DNS record for host {} (site: {}): {}", record.getHost(), site,
+                            e != null ? e.getMessage() : result.getReason());
+                    }
+                }));
+        }
+        CompletableFuture.allOf(upserts.toArray(new CompletableFuture[0])).exceptionally(e -> null).join();
+    }
+
+    /**
+     * Rotation with a known old value: add the new value and delete the old one for every
+     * host of the site through batch tasks instead of a query and an update per host.
+     */
+    private void rotateSiteRecords(String site, List<DnsRecord> siteRecords, String ipAddress, String previousIpAddress) {
+        String recordType = ipAddress.contains(":") ? "AAAA" : "A";
+        String previousRecordType = previousIpAddress.contains(":") ? "AAAA" : "A";
+
+        List<DnsChange> changes = new ArrayList<>();
+        for (DnsRecord record : siteRecords) {
+            MappedHost mapped = mapOrWarn(record);
+            if (mapped == null) {
+                continue;
+            }
+            changes.add(DnsChange.add(mapped.externalZone(), mapped.externalRr(), recordType, ipAddress));
+            changes.add(DnsChange.delete(mapped.externalZone(), mapped.externalRr(), previousRecordType, previousIpAddress));
+        }
+
+        List<CompletableFuture<DnsResult>> futures = dnsBatchCollector.enqueueAll(changes);
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).exceptionally(e -> null).join();
+
+        long failed = futures.stream()
+            .filter(f -> f.isCompletedExceptionally() || !f.join().isSuccess())
+            .count();
+        if (failed > 0) {
+            log.error("{} of {} DNS changes failed while rotating site {} from {} to {}",
+                failed, changes.size(), site, previousIpAddress, ipAddress);
+        } else {
+            log.info("Rotated {} external DNS records of site {} from {} to {}",
+                siteRecords.size(), site, previousIpAddress, ipAddress);
+        }
+    }
+
+    private MappedHost mapOrWarn(DnsRecord record) {
+        MappedHost mapped = hostMappingEngine.match(record.getHost()).orElse(null);
+        if (mapped == null) {
+            log.warn("No host mapping matches {}, skipping its external DNS record", record.getHost());
+        }
+        return mapped;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,90 @@
+package io.annopick.gateway.autodns.service;
+
+import io.annopick.gateway.autodns.config.AutoDnsProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Readiness contributor ("startup") that stays OUT_OF_SERVICE until the Ingress informer
+ * has synced and its initial ADD events were handled, so the pod only takes traffic after
+ * reconciling with the whole cluster. The wait is capped at
+ * {@code autodns.startup.timeout-seconds} after JVM start; the time to ready is published
+ * as {@code autodns.startup.time}, tagged with outcome reconciled or timeout.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class StartupHealthIndicator implements HealthIndicator {
+
+    private static final long POLL_INTERVAL_MILLIS = 100;
+
+    private final IngressWatcher ingressWatcher;
+    private final MeterRegistry meterRegistry;
+    private final AutoDnsProperties properties;
+
+    // null until startup has settled
+    private volatile String outcome;
+    private volatile long startupMillis;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void awaitInitialReconcile() {
+        Thread thread = new Thread(this::pollUntilSettled, "startup-monitor");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public Health health() {
+        if (outcome == null) {
+            return Health.outOfService()
+                .withDetail("informerSynced", ingressWatcher.hasSynced())
+                .withDetail("reconciled", false)
+                .withDetail("elapsedMillis", sinceJvmStart())
+                .build();
+        }
+        return Health.up()
+            .withDetail("outcome", outcome)
+            .withDetail("startupMillis", startupMillis)
+            .build();
+    }
+
+    private void pollUntilSettled() {
+        long timeoutMillis = TimeUnit.SECONDS.toMillis(properties.getStartup().getTimeoutSeconds());
+        try {
+            while (!ingressWatcher.hasReconciled() && sinceJvmStart() < timeoutMillis) {
+                Thread.sleep(POLL_INTERVAL_MILLIS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        startupMillis = sinceJvmStart();
+        String result = ingressWatcher.hasReconciled() ? "reconciled" : "timeout";
+        TimeGauge.builder("autodns.startup.time", this, TimeUnit.MILLISECONDS, s -> s.startupMillis)
+            .tag("outcome", result)
+            .description("Time from JVM start until the server reported ready")
+            .register(meterRegistry);
+        outcome = result;
+
+        if ("reconciled".equals(result)) {
+            log.info("Ingresses reconciled, ready {} ms after JVM start", startupMillis);
+        } else {
+            log.warn("Ingresses not reconciled within {} s, reporting ready anyway; routes will catch up as events arrive",
+                properties.getStartup().getTimeoutSeconds());
+        }
+    }
+
+    private static long sinceJvmStart() {
+        return System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+    }
+}
@@ -0,0 +1,290 @@
+package io.annopick.gateway.autodns.dns;
+
+import io.annopick.gateway.autodns.config.AutoDnsProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DnsPropagationProbeTest {
+
+    private static final String ZONE = "jsccb.ltd";
+    private static final String RR = "app-k8s";
+    private static final String FQDN = RR + "." + ZONE;
+
+    private DnsResponder responder;
+    private SimpleMeterRegistry registry;
+    private DnsPropagationProbe probe;
+
+    @BeforeEach
+    void setUp() throws SocketException {
+        responder = new DnsResponder();
+        registry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (probe != null) {
+            probe.shutdown();
+        }
+        responder.close();
+    }
+
+    @Test
+    void addIsMeasuredOnceTheResolverServesIt() throws Exception {
+        probe = createProbe(5);
+
+        probe.track(DnsPropagationProbe.ADD, ZONE, RR, "A", "10.0.0.1", "r1");
+        responder.change(FQDN, 300, List.of("10.0.0.1"));
+
+        await(() -> propagated("add") == 1);
+        Timer timer = registry.find("autodns.dns.propagation.time").tag("operation", "add").timer();
+        assertTrue(timer.totalTime(TimeUnit.MILLISECONDS) >= 300);
+        assertEquals(1, registry.find("autodns.dns.propagation.resolver.time")
+            .tag("resolver", responder.name()).timer().count());
+        // Answered NXDOMAIN until then, so polled with backoff
+        assertTrue(responder.queries() > 1);
+        assertEquals(0, inFlight());
+    }
+
+    @Test
+    void rrWideDeleteWaitsForNxdomain() throws Exception {
+        responder.change(FQDN, 0, List.of("10.0.0.1"));
+        probe = createProbe(5);
+
+        probe.track(DnsPropagationProbe.DELETE, ZONE, RR, null, null, "r1");
+        responder.change(FQDN, 300, null);
+
+        await(() -> propagated("delete") == 1);
+        assertTrue(registry.find("autodns.dns.propagation.time").tag("operation", "delete").timer()
+            .totalTime(TimeUnit.MILLISECONDS) >= 300);
+    }
+
+    @Test
+    void deleteOfTheLastValueAcceptsAnEmptyAnswer() throws Exception {
+        responder.change(FQDN, 0, List.of("10.0.0.1"));
+        probe = createProbe(5);
+
+        probe.track(DnsPropagationProbe.DELETE, ZONE, RR, null, null, "r1");
+        // NOERROR without records, e.g. a TXT record left on the name
+        responder.change(FQDN, 200, List.of());
+
+        await(() -> propagated("delete") == 1);
+        assertEquals(0, timeouts("delete"));
+    }
+
+    @Test
+    void writesNeverServedCountAsTimeouts() throws Exception {
+        responder.change(FQDN, 0, List.of("10.0.0.1"));
+        probe = createProbe(1);
+
+        probe.track(DnsPropagationProbe.ADD, ZONE, RR, "A", "10.0.0.2", "r2");
+
+        await(() -> inFlight() == 0);
+        assertEquals(1, timeouts("add"));
+        assertEquals(1, registry.find("autodns.dns.propagation.timeouts")
+            .tag("resolver", responder.name()).counter().count());
+        assertEquals(0, propagated("add"));
+    }
+
+    @Test
+    void rrWideDeleteDoesNotHideTheAddOfARotation() throws Exception {
+        responder.change(FQDN, 0, List.of("10.0.0.1"));
+        probe = createProbe(1);
+
+        // One batch: the new value added, the RR's old records deleted without a value
+        probe.track(DnsPropagationProbe.ADD, ZONE, RR, "A", "10.0.0.2", "r2");
+        probe.track(DnsPropagationProbe.DELETE, ZONE, RR, null, null, "r1");
+        responder.change(FQDN, 200, List.of("10.0.0.2"));
+
+        await(() -> inFlight() == 0);
+        assertEquals(1, propagated("add"));
+        // The RR is never empty again, which the timeout reports
+        assertEquals(1, timeouts("delete"));
+    }
+
+    @Test
+    void deleteOfTheAddedValueSupersedesTheAdd() throws Exception {
+        probe = createProbe(1);
+
+        probe.track(DnsPropagationProbe.ADD, ZONE, RR, "A", "10.0.0.1", "r1");
+        probe.track(DnsPropagationProbe.DELETE, ZONE, RR, "A", "10.0.0.1", "r1");
+
+        await(() -> inFlight() == 0);
+        assertEquals(1, propagated("delete"));
+        assertEquals(0, propagated("add"));
+        assertEquals(0, timeouts("add"));
+    }
+
+    private DnsPropagationProbe createProbe(int timeoutSeconds) {
+        AutoDnsProperties properties = new AutoDnsProperties();
+        AutoDnsProperties.DnsProbeConfig config = properties.getDnsProbe();
+        config.setEnabled(true);
+        config.setResolvers(List.of(responder.name()));
+        config.setInitialDelayMillis(50);
+        config.setMaxIntervalMillis(100);
+        config.setQueryTimeoutMillis(500);
+        config.setTimeoutSeconds(timeoutSeconds);
+        return new DnsPropagationProbe(properties, registry);
+    }
+
+    private long propagated(String operation) {
+        Timer timer = registry.find("autodns.dns.propagation.time").tag("operation", operation).timer();
+        return timer == null ? 0 : timer.count();
+    }
+
+    private double timeouts(String operation) {
+        Counter counter = registry.find("autodns.dns.propagation.timeouts").tag("operation", operation).counter();
+        return counter == null ? 0 : counter.count();
+    }
+
+    private double inFlight() {
+        return registry.get("autodns.dns.propagation.inflight").gauge().value();
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "condition not met within 5 s");
+            Thread.sleep(20);
+        }
+    }
+
+    /**
+     * Authoritative UDP responder on localhost answering A queries from a table whose
+     * entries switch to a new state after a delay.
+     */
+    private static final class DnsResponder implements AutoCloseable {
+
+        private static final int NOERROR = 0;
+        private static final int NXDOMAIN = 3;
+        private static final int TYPE_A = 1;
+        private static final int TYPE_ANY = 255;
+
+        // null addresses: NXDOMAIN
+        private record State(List<String> before, List<String> after, long switchNanos) {
+            List<String> current() {
+                return System.nanoTime() >= switchNanos ? after : before;
+            }
+        }
+
+        private final DatagramSocket socket;
+        private final Map<String, State> names = new ConcurrentHashMap<>();
+        private final AtomicInteger queries = new AtomicInteger();
+        private final Thread thread;
+
+        DnsResponder() throws SocketException {
+            socket = new DatagramSocket(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            thread = new Thread(this::serve, "dns-responder");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        String name() {
+            return "127.0.0.1:" + socket.getLocalPort();
+        }
+
+        int queries() {
+            return queries.get();
+        }
+
+        /**
+         * Serves {@code addresses} for {@code fqdn} after {@code delayMillis}; null means NXDOMAIN.
+         */
+        void change(String fqdn, long delayMillis, List<String> addresses) {
+            State previous = names.get(fqdn);
+            List<String> before = previous != null ? previous.current() : null;
+            names.put(fqdn, new State(before, addresses, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis)));
+        }
+
+        private void serve() {
+            byte[] buffer = new byte[512];
+            while (!socket.isClosed()) {
+                DatagramPacket request = new DatagramPacket(buffer, buffer.length);
+                try {
+                    socket.receive(request);
+                    queries.incrementAndGet();
+                    byte[] response = answer(request.getData(), request.getLength());
+                    socket.send(new DatagramPacket(response, response.length, request.getSocketAddress()));
+                } catch (IOException e) {
+                    // Closed
+                }
+            }
+        }
+
+        private byte[] answer(byte[] query, int length) {
+            // Question: labels, then QTYPE and QCLASS
+            StringBuilder name = new StringBuilder();
+            int offset = 12;
+            while (offset < length && query[offset] != 0) {
+                int labelLength = query[offset] & 0xff;
+                if (name.length() > 0) {
+                    name.append('.');
+                }
+                name.append(new String(query, offset + 1, labelLength));
+                offset += labelLength + 1;
+            }
+            int questionEnd = offset + 5;
+            int type = ((query[offset + 1] & 0xff) << 8) | (query[offset + 2] & 0xff);
+
+            State state = names.get(name.toString().toLowerCase(Locale.ROOT));
+            List<String> addresses = state != null ? state.current() : null;
+            List<String> answers = addresses != null && (type == TYPE_A || type == TYPE_ANY) ? addresses : List.of();
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            out.write(query[0]);
+            out.write(query[1]);
+            // QR, AA, RD copied from the query
+            out.write(0x84 | (query[2] & 0x01));
+            out.write(addresses == null ? NXDOMAIN : NOERROR);
+            writeShort(out, 1);
+            writeShort(out, answers.size());
+            writeShort(out, 0);
+            writeShort(out, 0);
+            out.write(query, 12, questionEnd - 12);
+            for (String address : answers) {
+                // Name as a pointer to the question
+                writeShort(out, 0xc00c);
+                writeShort(out, TYPE_A);
+                writeShort(out, 1);
+                writeShort(out, 0);
+                writeShort(out, 60);
+                writeShort(out, 4);
+                for (String octet : address.split("\\.")) {
+                    out.write(Integer.parseInt(octet));
+                }
+            }
+            return out.toByteArray();
+        }
+
+        private static void writeShort(ByteArrayOutputStream out, int value) {
+            out.write(value >> 8);
+            out.write(value);
+        }
+
+        @Override
+        public void close() {
+            socket.close();
+        }
+    }
+}
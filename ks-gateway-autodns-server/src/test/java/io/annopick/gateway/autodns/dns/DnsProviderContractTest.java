@@ -0,0 +1,128 @@
+package io.annopick.gateway.autodns.dns;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Behaviour every {@link DnsProvider} must share; extend it with a factory for the provider.
+ */
+abstract class DnsProviderContractTest {
+
+    protected static final String ZONE = "jsccb.ltd";
+    protected static final String OTHER_ZONE = "example.net";
+
+    protected DnsProvider provider;
+
+    protected abstract DnsProvider createProvider();
+
+    @BeforeEach
+    void setUpProvider() {
+        provider = createProvider();
+    }
+
+    @Test
+    void addedRecordCanBeQueried() {
+        DnsResult added = provider.addRecord(ZONE, "app-k8s", "A", "10.0.0.1").join();
+        assertTrue(added.isSuccess());
+        assertNotNull(added.getRecordId());
+        assertEquals(ZONE, added.getZone());
+
+        DnsRecordInfo record = provider.queryRecord(ZONE, "app-k8s").join().orElseThrow();
+        assertEquals(added.getRecordId(), record.getRecordId());
+        assertEquals(ZONE, record.getZone());
+        assertEquals("A", record.getType());
+        assertEquals("10.0.0.1", record.getValue());
+    }
+
+    @Test
+    void missingRecordQueriesEmpty() {
+        assertEquals(Optional.empty(), provider.queryRecord(ZONE, "missing").join());
+    }
+
+    @Test
+    void duplicateAddFailsWithoutThrowing() {
+        provider.addRecord(ZONE, "app-k8s", "A", "10.0.0.1").join();
+        DnsResult duplicate = provider.addRecord(ZONE, "app-k8s", "A", "10.0.0.1").join();
+        assertFalse(duplicate.isSuccess());
+        assertNotNull(duplicate.getReason());
+    }
+
+    @Test
+    void updateReplacesTheValue() {
+        DnsResult added = provider.addRecord(ZONE, "app-nj", "A", "1.1.1.1").join();
+        DnsResult updated = provider.updateRecord(added.getRecordId(), ZONE, "app-nj", "A", "2.2.2.2").join();
+        assertTrue(updated.isSuccess());
+        assertEquals("2.2.2.2", provider.queryRecord(ZONE, "app-nj").join().orElseThrow().getValue());
+    }
+
+    @Test
+    void updateOfUnknownRecordFails() {
+        assertFalse(provider.updateRecord("does-not-exist", ZONE, "app-nj", "A", "2.2.2.2").join().isSuccess());
+    }
+
+    @Test
+    void deleteRemovesTheRecord() {
+        DnsResult added = provider.addRecord(ZONE, "app-nj", "A", "1.1.1.1").join();
+        assertTrue(provider.deleteRecord(added.getRecordId()).join().isSuccess());
+        assertTrue(provider.queryRecord(ZONE, "app-nj").join().isEmpty());
+        assertFalse(provider.deleteRecord(added.getRecordId()).join().isSuccess());
+    }
+
+    @Test
+    void zonesAreIndependent() {
+        provider.addRecord(ZONE, "app", "A", "1.1.1.1").join();
+        provider.addRecord(OTHER_ZONE, "app", "A", "2.2.2.2").join();
+
+        assertEquals("1.1.1.1", provider.queryRecord(ZONE, "app").join().orElseThrow().getValue());
+        assertEquals(OTHER_ZONE, provider.queryRecord(OTHER_ZONE, "app").join().orElseThrow().getZone());
+    }
+
+    @Test
+    void batchResultsFollowTheOrderOfChanges() {
+        List<DnsChange> changes = List.of(
+            DnsChange.add(ZONE, "a", "A", "10.0.0.1"),
+            DnsChange.add(OTHER_ZONE, "b", "A", "10.0.0.2"),
+            DnsChange.add(ZONE, "c", "A", "10.0.0.3"));
+
+        List<DnsResult> results = provider.applyBatch(changes).join();
+
+        assertEquals(changes.size(), results.size());
+        for (int i = 0; i < changes.size(); i++) {
+            assertTrue(results.get(i).isSuccess());
+            assertEquals(changes.get(i).getZone(), results.get(i).getZone());
+            assertEquals(changes.get(i).getRr(), results.get(i).getRr());
+            assertEquals(changes.get(i).getValue(), results.get(i).getValue());
+        }
+    }
+
+    @Test
+    void batchDeleteByValueKeepsOtherValues() {
+        provider.applyBatch(List.of(
+            DnsChange.add(ZONE, "app-k8s", "A", "10.0.0.1"),
+            DnsChange.add(ZONE, "app-k8s", "A", "10.0.0.2"))).join();
+
+        DnsResult deleted = provider.applyBatch(List.of(DnsChange.delete(ZONE, "app-k8s", "A", "10.0.0.1"))).join().get(0);
+
+        assertTrue(deleted.isSuccess());
+        assertEquals("10.0.0.2", provider.queryRecord(ZONE, "app-k8s").join().orElseThrow().getValue());
+    }
+
+    @Test
+    void batchDeleteWithoutMatchFails() {
+        provider.addRecord(ZONE, "app-k8s", "A", "10.0.0.1").join();
+
+        DnsResult deleted = provider.applyBatch(List.of(DnsChange.delete(ZONE, "app-k8s", "A", "10.9.9.9"))).join().get(0);
+
+        assertFalse(deleted.isSuccess());
+        assertNotNull(deleted.getReason());
+        assertTrue(provider.queryRecord(ZONE, "app-k8s").join().isPresent());
+    }
+}
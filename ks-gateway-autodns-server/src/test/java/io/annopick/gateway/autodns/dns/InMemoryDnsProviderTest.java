@@ -0,0 +1,9 @@
+package io.annopick.gateway.autodns.dns;
+
+class InMemoryDnsProviderTest extends DnsProviderContractTest {
+
+    @Override
+    protected DnsProvider createProvider() {
+        return new InMemoryDnsProvider();
+    }
+}
@@ -0,0 +1,140 @@
+package io.annopick.gateway.autodns.mapping;
+
+import io.annopick.gateway.autodns.config.AutoDnsProperties;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HostMappingEngineTest {
+
+    @Test
+    void dashStyleSuffixMapsInsideTheLabel() {
+        HostMappingEngine engine = engine(mapping("-k8s.jsccb.ltd", "-nj.jsccb.ltd", "jsccb.ltd", null));
+
+        assertEquals(new MappedHost("app-k8s.jsccb.ltd", "jsccb.ltd", "app-k8s", "A",
+                "app-nj.jsccb.ltd", "jsccb.ltd", "app-nj"),
+            engine.match("app-k8s.jsccb.ltd").orElseThrow());
+        assertEquals("shop.app-k8s", engine.match("shop.app-k8s.jsccb.ltd").orElseThrow().rr());
+    }
+
+    @Test
+    void dotStyleSuffixMapsWholeLabels() {
+        HostMappingEngine engine = engine(mapping(".apps.example.com", ".example.net", "example.com", "example.net"));
+
+        assertEquals(new MappedHost("shop.apps.example.com", "example.com", "shop.apps", "A",
+                "shop.example.net", "example.net", "shop"),
+            engine.match("shop.apps.example.com").orElseThrow());
+        // The suffix must start at a label boundary
+        assertTrue(engine.match("shopapps.example.com").isEmpty());
+    }
+
+    @Test
+    void longestSuffixWinsAcrossOverlappingZones() {
+        HostMappingEngine engine = engine(
+            mapping("-k8s.jsccb.ltd", "-nj.jsccb.ltd", "jsccb.ltd", null),
+            mapping("-k8s.dev.jsccb.ltd", "-dev.jsccb.ltd", "dev.jsccb.ltd", "jsccb.ltd"),
+            mapping(".example.com", ".example.net", "example.com", "example.net"),
+            mapping(".apps.example.com", ".apps.example.net", "apps.example.com", "example.net"));
+
+        MappedHost dev = engine.match("app-k8s.dev.jsccb.ltd").orElseThrow();
+        assertEquals("dev.jsccb.ltd", dev.zone());
+        assertEquals("app-k8s", dev.rr());
+        assertEquals("app-dev.jsccb.ltd", dev.externalHost());
+        assertEquals("app-dev", dev.externalRr());
+
+        assertEquals("jsccb.ltd", engine.match("app-k8s.jsccb.ltd").orElseThrow().zone());
+
+        MappedHost apps = engine.match("shop.apps.example.com").orElseThrow();
+        assertEquals("apps.example.com", apps.zone());
+        assertEquals("shop.apps.example.net", apps.externalHost());
+        assertEquals("shop.apps", apps.externalRr());
+
+        assertEquals("example.com", engine.match("shop.example.com").orElseThrow().zone());
+    }
+
+    @Test
+    void longerPartialLabelWinsAtTheSameNode() {
+        HostMappingEngine engine = engine(
+            mapping("-k8s.jsccb.ltd", "-nj.jsccb.ltd", "jsccb.ltd", null),
+            mapping("-test-k8s.jsccb.ltd", "-test-nj.jsccb.ltd", "jsccb.ltd", null));
+
+        assertEquals("app-test-nj.jsccb.ltd", engine.match("app-test-k8s.jsccb.ltd").orElseThrow().externalHost());
+        assertEquals("app-nj.jsccb.ltd", engine.match("app-k8s.jsccb.ltd").orElseThrow().externalHost());
+    }
+
+    @Test
+    void hostEqualToTheBareSuffixIsNotManaged() {
+        HostMappingEngine engine = engine(
+            mapping("-k8s.jsccb.ltd", "-nj.jsccb.ltd", "jsccb.ltd", null),
+            mapping(".apps.example.com", ".example.net", "example.com", "example.net"));
+
+        assertFalse(engine.isManaged("-k8s.jsccb.ltd"));
+        assertFalse(engine.isManaged("k8s.jsccb.ltd"));
+        assertFalse(engine.isManaged("jsccb.ltd"));
+        assertFalse(engine.isManaged("apps.example.com"));
+        assertFalse(engine.isManaged(".apps.example.com"));
+    }
+
+    @Test
+    void matchingIgnoresCaseAndTheTrailingDot() {
+        AutoDnsProperties.HostMappingConfig upper = mapping("-K8S.JSCCB.LTD", "-NJ.Jsccb.Ltd", "Jsccb.Ltd.", null);
+        upper.setRecordType("aaaa");
+        HostMappingEngine engine = engine(upper);
+
+        MappedHost mapped = engine.match("App-K8s.JSCCB.ltd.").orElseThrow();
+        assertEquals("app-k8s.jsccb.ltd", mapped.host());
+        assertEquals("jsccb.ltd", mapped.zone());
+        assertEquals("AAAA", mapped.recordType());
+        assertEquals("app-nj.jsccb.ltd", mapped.externalHost());
+    }
+
+    @Test
+    void unmatchedHostsAreNotManaged() {
+        HostMappingEngine engine = engine(mapping("-k8s.jsccb.ltd", "-nj.jsccb.ltd", "jsccb.ltd", null));
+
+        assertTrue(engine.match("app-nj.jsccb.ltd").isEmpty());
+        assertTrue(engine.match("app-k8s.jsccb.ltd.cn").isEmpty());
+        assertTrue(engine.match("app-k8s.other.ltd").isEmpty());
+        assertTrue(engine.match("").isEmpty());
+        assertTrue(engine.match(null).isEmpty());
+    }
+
+    @Test
+    void legacyPropertiesBuildASingleMapping() {
+        HostMappingEngine engine = new HostMappingEngine(new AutoDnsProperties());
+
+        MappedHost mapped = engine.match("app-k8s.jsccb.ltd").orElseThrow();
+        assertEquals("app-nj.jsccb.ltd", mapped.externalHost());
+        assertEquals("jsccb.ltd", mapped.externalZone());
+    }
+
+    @Test
+    void invalidMappingsAreRejected() {
+        assertThrows(IllegalStateException.class,
+            () -> engine(mapping("-k8s.jsccb.ltd", "-nj.jsccb.ltd", "example.com", null)));
+        assertThrows(IllegalStateException.class, () -> engine(
+            mapping("-k8s.jsccb.ltd", "-nj.jsccb.ltd", "jsccb.ltd", null),
+            mapping("-K8S.jsccb.ltd", "-sh.jsccb.ltd", "jsccb.ltd", null)));
+    }
+
+    private static HostMappingEngine engine(AutoDnsProperties.HostMappingConfig... mappings) {
+        AutoDnsProperties properties = new AutoDnsProperties();
+        properties.setHostMappings(List.of(mappings));
+        return new HostMappingEngine(properties);
+    }
+
+    private static AutoDnsProperties.HostMappingConfig mapping(String internalSuffix, String externalSuffix,
+                                                               String zone, String externalZone) {
+        AutoDnsProperties.HostMappingConfig mapping = new AutoDnsProperties.HostMappingConfig();
+        mapping.setInternalSuffix(internalSuffix);
+        mapping.setExternalSuffix(externalSuffix);
+        mapping.setZone(zone);
+        mapping.setExternalZone(externalZone);
+        return mapping;
+    }
+}
@@ -0,0 +1,161 @@
+package io.annopick.gateway.autodns.service;
+
+import io.annopick.gateway.autodns.config.AutoDnsProperties;
+import io.annopick.gateway.autodns.dns.DnsChange;
+import io.annopick.gateway.autodns.dns.DnsRecordInfo;
+import io.annopick.gateway.autodns.dns.DnsResult;
+import io.annopick.gateway.autodns.dns.InMemoryDnsProvider;
+import io.annopick.gateway.autodns.model.DnsRecord;
+import io.annopick.gateway.autodns.repository.DnsRecordRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DnsBatchCollectorTest {
+
+    private static final String ZONE = "jsccb.ltd";
+
+    private InMemoryDnsProvider provider;
+    private DnsRecordRepository repository;
+    private DnsBatchCollector collector;
+
+    @BeforeEach
+    void setUp() {
+        AutoDnsProperties properties = new AutoDnsProperties();
+        properties.getAliyun().setBatchWindowMillis(200);
+        provider = new AddsFirstDnsProvider();
+        repository = mock(DnsRecordRepository.class);
+        collector = new DnsBatchCollector(provider, repository, properties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        collector.shutdown();
+    }
+
+    @Test
+    void deleteAndReAddInOneWindowKeepsTheNewRecord() throws Exception {
+        provider.addRecord(ZONE, "app-k8s", "A", "10.0.0.1").join();
+
+        CompletableFuture<?> delete = collector.enqueue(DnsChange.delete(ZONE, "app-k8s", "A", "10.0.0.1"));
+        CompletableFuture<?> add = collector.enqueue(DnsChange.add(ZONE, "app-k8s", "A", "10.0.0.1"));
+        CompletableFuture.allOf(delete, add).get(5, TimeUnit.SECONDS);
+
+        List<DnsRecordInfo> records = provider.getRecords();
+        assertEquals(1, records.size());
+        assertEquals("10.0.0.1", records.get(0).getValue());
+    }
+
+    @Test
+    void rrWideDeleteIsNotOvertakenByALaterAdd() throws Exception {
+        provider.addRecord(ZONE, "app-nj", "A", "1.1.1.1").join();
+
+        CompletableFuture<?> delete = collector.enqueue(DnsChange.delete(ZONE, "app-nj", null, null));
+        CompletableFuture<?> add = collector.enqueue(DnsChange.add(ZONE, "app-nj", "A", "2.2.2.2"));
+        CompletableFuture.allOf(delete, add).get(5, TimeUnit.SECONDS);
+
+        List<DnsRecordInfo> records = provider.getRecords();
+        assertEquals(1, records.size());
+        assertEquals("2.2.2.2", records.get(0).getValue());
+    }
+
+    @Test
+    void rotationOfDifferentValuesStaysInOneBatch() throws Exception {
+        provider.addRecord(ZONE, "app-nj", "A", "1.1.1.1").join();
+
+        CompletableFuture<?> add = collector.enqueue(DnsChange.add(ZONE, "app-nj", "A", "2.2.2.2"));
+        CompletableFuture<?> delete = collector.enqueue(DnsChange.delete(ZONE, "app-nj", "A", "1.1.1.1"));
+        // Not conflicting, so both wait for the window
+        assertFalse(add.isDone());
+        CompletableFuture.allOf(add, delete).get(5, TimeUnit.SECONDS);
+
+        List<DnsRecordInfo> records = provider.getRecords();
+        assertEquals(1, records.size());
+        assertEquals("2.2.2.2", records.get(0).getValue());
+    }
+
+    @Test
+    void drainAppliesQueuedChangesOfTheRr() throws Exception {
+        provider.addRecord(ZONE, "app-nj", "A", "1.1.1.1").join();
+        collector.enqueue(DnsChange.delete(ZONE, "app-nj", "A", "1.1.1.1"));
+
+        collector.drain(ZONE, "app-nj").get(5, TimeUnit.SECONDS);
+
+        assertTrue(provider.queryRecord(ZONE, "app-nj").join().isEmpty());
+        assertTrue(collector.drain(ZONE, "other").isDone());
+    }
+
+    @Test
+    void addResultMapsItsRecordIdOnlyToTheMatchingRow() throws Exception {
+        DnsRecord matching = record(ZONE, "10.0.0.1,10.0.0.2");
+        DnsRecord otherZone = record("example.net", "10.0.0.2");
+        DnsRecord otherIp = record(ZONE, "10.0.0.9");
+        when(repository.findByRr("app-k8s")).thenReturn(List.of(otherZone, otherIp, matching));
+
+        DnsResult added = collector.enqueue(DnsChange.add(ZONE, "app-k8s", "A", "10.0.0.2")).get(5, TimeUnit.SECONDS);
+
+        assertTrue(added.isSuccess());
+        assertEquals(added.getRecordId(), matching.getRecordId());
+        assertNull(otherZone.getRecordId());
+        assertNull(otherIp.getRecordId());
+        verify(repository).save(matching);
+        verify(repository, never()).save(otherZone);
+        verify(repository, never()).save(otherIp);
+    }
+
+    @Test
+    void deleteResultMapsNoRecordId() throws Exception {
+        provider.addRecord(ZONE, "app-k8s", "A", "10.0.0.1").join();
+        DnsRecord row = record(ZONE, "10.0.0.1");
+        when(repository.findByRr("app-k8s")).thenReturn(List.of(row));
+
+        DnsResult deleted = collector.enqueue(DnsChange.delete(ZONE, "app-k8s", "A", "10.0.0.1")).get(5, TimeUnit.SECONDS);
+
+        assertTrue(deleted.isSuccess());
+        assertNull(row.getRecordId());
+        verify(repository, never()).save(any());
+    }
+
+    private static DnsRecord record(String zone, String ipAddresses) {
+        DnsRecord record = new DnsRecord();
+        record.setHost("app-k8s." + zone);
+        record.setRr("app-k8s");
+        record.setZone(zone);
+        record.setIpAddresses(ipAddresses);
+        return record;
+    }
+
+    /**
+     * Applies a batch the way Alidns does: every RR_ADD task before any RR_DEL task.
+     */
+    private static class AddsFirstDnsProvider extends InMemoryDnsProvider {
+        @Override
+        public synchronized CompletableFuture<List<DnsResult>> applyBatch(List<DnsChange> changes) {
+            Map<DnsChange, DnsResult> results = new IdentityHashMap<>();
+            for (String operation : List.of(DnsChange.ADD, DnsChange.DELETE)) {
+                for (DnsChange change : changes) {
+                    if (operation.equals(change.getOperation())) {
+                        results.put(change, super.applyBatch(List.of(change)).join().get(0));
+                    }
+                }
+            }
+            return CompletableFuture.completedFuture(changes.stream().map(results::get).toList());
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package io.annopick.gateway.autodns.service;
+
+import io.annopick.gateway.autodns.dns.DnsChange;
+import io.annopick.gateway.autodns.mapping.MappedHost;
+import io.annopick.gateway.autodns.model.DnsRecord;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IngressWatcherTest {
+
+    private static final String DEFAULT_ZONE = "jsccb.ltd";
+
+    @Test
+    void ipChangeAddsNewAndDeletesGoneIps() {
+        DnsRecord record = record("jsccb.ltd", "app-k8s", "A", "10.0.0.1,10.0.0.2");
+        MappedHost mapped = mapped("jsccb.ltd", "app-k8s", "A");
+
+        List<DnsChange> changes = IngressWatcher.dnsChanges(record, mapped, List.of("10.0.0.2", "10.0.0.3"), DEFAULT_ZONE);
+
+        assertEquals(List.of(
+            DnsChange.add("jsccb.ltd", "app-k8s", "A", "10.0.0.3"),
+            DnsChange.delete("jsccb.ltd", "app-k8s", "A", "10.0.0.1")), changes);
+    }
+
+    @Test
+    void unchangedMappingAndIpsNeedNoChanges() {
+        DnsRecord record = record(null, "app-k8s", null, "10.0.0.1");
+
+        assertTrue(IngressWatcher.dnsChanges(record, mapped("jsccb.ltd", "app-k8s", "A"),
+            List.of("10.0.0.1"), DEFAULT_ZONE).isEmpty());
+    }
+
+    @Test
+    void mappingChangeMovesEveryIpToTheNewName() {
+        DnsRecord record = record("jsccb.ltd", "app-k8s", "A", "10.0.0.1,10.0.0.2");
+        MappedHost mapped = mapped("dev.jsccb.ltd", "app-k8s", "A");
+
+        List<DnsChange> changes = IngressWatcher.dnsChanges(record, mapped, List.of("10.0.0.1", "10.0.0.2"), DEFAULT_ZONE);
+
+        assertEquals(List.of(
+            DnsChange.add("dev.jsccb.ltd", "app-k8s", "A", "10.0.0.1"),
+            DnsChange.add("dev.jsccb.ltd", "app-k8s", "A", "10.0.0.2"),
+            DnsChange.delete("jsccb.ltd", "app-k8s", "A", "10.0.0.1"),
+            DnsChange.delete("jsccb.ltd", "app-k8s", "A", "10.0.0.2")), changes);
+    }
+
+    @Test
+    void rrAndTypeChangesWithIpChangesKeepNoOldRecord() {
+        DnsRecord record = record(null, "app-k8s", "A", "10.0.0.1,10.0.0.2");
+        MappedHost mapped = mapped("jsccb.ltd", "app-k8s.apps", "AAAA");
+
+        List<DnsChange> changes = IngressWatcher.dnsChanges(record, mapped, List.of("10.0.0.2", "10.0.0.3"), DEFAULT_ZONE);
+
+        assertEquals(List.of(
+            DnsChange.add("jsccb.ltd", "app-k8s.apps", "AAAA", "10.0.0.2"),
+            DnsChange.add("jsccb.ltd", "app-k8s.apps", "AAAA", "10.0.0.3"),
+            DnsChange.delete("jsccb.ltd", "app-k8s", "A", "10.0.0.1"),
+            DnsChange.delete("jsccb.ltd", "app-k8s", "A", "10.0.0.2")), changes);
+    }
+
+    private static DnsRecord record(String zone, String rr, String recordType, String ipAddresses) {
+        DnsRecord record = new DnsRecord();
+        record.setHost(rr + "." + DEFAULT_ZONE);
+        record.setZone(zone);
+        record.setRr(rr);
+        record.setRecordType(recordType);
+        record.setIpAddresses(ipAddresses);
+        return record;
+    }
+
+    private static MappedHost mapped(String zone, String rr, String recordType) {
+        return new MappedHost(rr + "." + zone, zone, rr, recordType,
+            "app-nj.jsccb.ltd", "jsccb.ltd", "app-nj");
+    }
+}